@@ -0,0 +1,325 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a synthetic {@code pfm_data} layout for load testing: an
+ * {@code accounts.txt} of N accounts in the {@link AccountDAO} format and, for every
+ * account, M years of {@code MM/DD/YYYY,Category,Amount} files.
+ *
+ * <p>Each year has a monthly salary plus occasional other income, and expenses whose
+ * categories follow a Zipf distribution (the first categories are the most common)
+ * and whose number per month follows a yearly cycle peaking in December. A share of
+ * rows can be made invalid, each with one of the mistakes validation rejects: bad
+ * month, impossible day, wrong year, bad category, bad amount or missing column.
+ * Without invalid rows every file passes
+ * {@link ValidationManager.CheckCSVContent#validateWholeCSVFile}.</p>
+ *
+ * <p>Output depends only on the options and the seed: every user has its own random
+ * stream derived from the seed and the user's index, so users are generated in
+ * parallel. Account {@code i} is {@link #username(int)} with password
+ * {@link #password(int)}, stored in plaintext unless {@code --hashed} is given (the
+ * login path accepts and upgrades plaintext passwords).</p>
+ *
+ * <p>Usage: {@code java DatasetGenerator <output dir> [--accounts 100] [--years 3]
+ * [--rows 1000] [--first-year 2023] [--categories 12] [--skew 1.0]
+ * [--seasonality 0.3] [--invalid 0.0] [--seed 1] [--hashed] [--verify]}</p>
+ */
+public class DatasetGenerator {
+
+    /** Expense categories, most common first; more are named {@code Category_Xy}. */
+    private static final String[] EXPENSES = {
+        "Food", "Transportation", "Utilities", "Entertainment", "Appearance", "Health", "Rent", "Work",
+        "Education", "Professional_Services", "Travel", "Gifts", "Insurance", "Other",
+    };
+    /** Typical size of one expense of each category above, in dollars. */
+    private static final int[] TYPICAL = {30, 25, 90, 45, 60, 80, 1200, 40, 300, 250, 400, 50, 150, 35};
+    private static final String[] OTHER_INCOME = {"Allowance", "Investments", "Gifts_Received"};
+
+    private final long seed;
+    private final String[] categories;
+    private final int[] typical;
+    private final double[] cumulative;
+    private final double seasonality;
+    private final double invalidRate;
+
+    /**
+     * @param seed the seed every account and year is derived from.
+     * @param categories the number of expense categories.
+     * @param skew the Zipf exponent of category frequencies; 0 for uniform.
+     * @param seasonality the amplitude (0-1) of the yearly cycle of expense counts.
+     * @param invalidRate the share (0-1) of rows to make invalid.
+     */
+    public DatasetGenerator(long seed, int categories, double skew, double seasonality, double invalidRate) {
+        if (categories < 1) throw new IllegalArgumentException("At least one category is required");
+        if (seasonality < 0 || seasonality > 1) throw new IllegalArgumentException("Seasonality must be 0-1");
+        if (invalidRate < 0 || invalidRate > 1) throw new IllegalArgumentException("Invalid rate must be 0-1");
+        this.seed = seed;
+        this.seasonality = seasonality;
+        this.invalidRate = invalidRate;
+        this.categories = new String[categories];
+        this.typical = new int[categories];
+        this.cumulative = new double[categories];
+        double total = 0;
+        for (int c = 0; c < categories; c++) {
+            this.categories[c] = c < EXPENSES.length ? EXPENSES[c]
+                    : "Category_" + (char) ('A' + c / 26 % 26) + (char) ('a' + c % 26);
+            this.typical[c] = c < TYPICAL.length ? TYPICAL[c] : 20 + c % 7 * 15;
+            total += 1 / Math.pow(c + 1, skew);
+            this.cumulative[c] = total;
+        }
+        for (int c = 0; c < categories; c++) this.cumulative[c] /= total;
+    }
+
+    /**
+     * @param index the account index.
+     * @return the username of an account.
+     */
+    public static String username(int index) {
+        return String.format("user%06d", index);
+    }
+
+    /**
+     * @param index the account index.
+     * @return the password of an account; it satisfies the registration rules.
+     */
+    public static String password(int index) {
+        return "Pfm#Load" + index;
+    }
+
+    /**
+     * @param index the account index.
+     * @return the random stream of an account, independent of every other account.
+     */
+    private SplittableRandom random(int index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new SplittableRandom(z ^ (z >>> 31));
+    }
+
+    /**
+     * Writes the accounts file.
+     * @param file the file to write, e.g. {@code accounts.txt}.
+     * @param accounts the number of accounts.
+     * @param hashed true to store PBKDF2 hashes, false for plaintext passwords.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeAccounts(File file, int accounts, boolean hashed) throws IOException {
+        String[] passwords = new String[accounts];
+        IntStream.range(0, accounts).parallel().forEach(i ->
+                passwords[i] = hashed ? PasswordHasher.shared().hash(password(i)) : password(i));
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (int i = 0; i < accounts; i++) {
+                SplittableRandom random = random(-1 - i);
+                String id = new UUID(random.nextLong(), random.nextLong()).toString();
+                writer.write(id + "|" + username(i) + "|" + passwords[i] + "|What is your favorite color|blue");
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Writes one year file.
+     * @param csv the file to write.
+     * @param year the year of every valid row.
+     * @param rows the number of rows.
+     * @param random the random stream to draw from.
+     * @return the number of invalid rows written.
+     * @throws IOException if the file cannot be written.
+     */
+    public int writeYear(File csv, int year, int rows, SplittableRandom random) throws IOException {
+        // Rows are generated as (date, line) pairs and written in date order
+        long[] dated = new long[rows];
+        String[] lines = new String[rows];
+        int salary = 2500 + random.nextInt(60) * 100;
+        int income = Math.min(rows, 12);
+        double[] monthWeights = new double[12];
+        double weightTotal = 0;
+        for (int m = 0; m < 12; m++) {
+            weightTotal += 1 + seasonality * Math.cos(2 * Math.PI * (m - 11) / 12);
+            monthWeights[m] = weightTotal;
+        }
+
+        int invalid = 0;
+        for (int i = 0; i < rows; i++) {
+            int month;
+            String category;
+            long amount;
+            if (i < income) {
+                month = i + 1;
+                category = "Compensation";
+                amount = salary;
+            } else if (random.nextInt(40) == 0) {
+                month = 1 + random.nextInt(12);
+                category = OTHER_INCOME[random.nextInt(OTHER_INCOME.length)];
+                amount = 50 + random.nextInt(1000);
+            } else {
+                double u = random.nextDouble() * weightTotal;
+                month = 1;
+                while (month < 12 && monthWeights[month - 1] < u) month++;
+                int c = pick(random.nextDouble());
+                category = categories[c];
+                // Log-normal spread around the typical amount
+                amount = -Math.max(1, Math.round(typical[c] * Math.exp(0.5 * gaussian(random) - 0.125)));
+            }
+            int day = i < income ? 15 : 1 + random.nextInt(YearMonth.of(year, month).lengthOfMonth());
+
+            String line = String.format("%02d/%02d/%04d,%s,%d", month, day, year, category, amount);
+            if (random.nextDouble() < invalidRate) {
+                line = corrupt(line, month, day, year, category, amount, random);
+                invalid++;
+            }
+            dated[i] = ((long) (month * 100 + day) << 32) | i;
+            lines[i] = line;
+        }
+        Arrays.sort(dated);
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(csv))) {
+            for (long d : dated) {
+                writer.write(lines[(int) d]);
+                writer.newLine();
+            }
+        }
+        return invalid;
+    }
+
+    private int pick(double u) {
+        int c = Arrays.binarySearch(cumulative, u);
+        return Math.min(categories.length - 1, c >= 0 ? c : -c - 1);
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller; SplittableRandom has no nextGaussian in Java 17
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    /** Replaces a valid row with one of the mistakes validation rejects. */
+    private static String corrupt(String line, int month, int day, int year, String category, long amount,
+                                  SplittableRandom random) {
+        switch (random.nextInt(6)) {
+            case 0: return String.format("%02d/%02d/%04d,%s,%d", 13, day, year, category, amount);
+            case 1: return String.format("%02d/%02d/%04d,%s,%d", month, 32, year, category, amount);
+            case 2: return String.format("%02d/%02d/%04d,%s,%d", month, day, year - 1, category, amount);
+            case 3: return String.format("%02d/%02d/%04d,%s%d,%d", month, day, year, category, 1, amount);
+            case 4: return String.format("%02d/%02d/%04d,%s,%d.50", month, day, year, category, amount);
+            default: return line.substring(0, line.lastIndexOf(','));
+        }
+    }
+
+    /**
+     * Generates a whole data set.
+     * @param root the directory to create {@code accounts.txt} and {@code pfm_data} in.
+     * @param accounts the number of accounts.
+     * @param years the number of years per account.
+     * @param firstYear the first year.
+     * @param rows the number of rows per year.
+     * @param hashed true to store PBKDF2 hashes, false for plaintext passwords.
+     * @return the number of invalid rows written.
+     * @throws IOException if a file cannot be written.
+     */
+    public long generate(File root, int accounts, int years, int firstYear, int rows, boolean hashed)
+            throws IOException {
+        writeAccounts(new File(root, "accounts.txt"), accounts, hashed);
+        AtomicLong invalid = new AtomicLong();
+        try {
+            IntStream.range(0, accounts).parallel().forEach(i -> {
+                File userDirectory = new File(root, "pfm_data/" + username(i));
+                if (!userDirectory.isDirectory() && !userDirectory.mkdirs()) {
+                    throw new UncheckedIOException(new IOException("Cannot create " + userDirectory));
+                }
+                SplittableRandom random = random(i);
+                try {
+                    for (int y = 0; y < years; y++) {
+                        invalid.addAndGet(writeYear(new File(userDirectory, (firstYear + y) + ".csv"),
+                                firstYear + y, rows, random));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return invalid.get();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args[0].startsWith("--")) {
+            System.err.println("Usage: DatasetGenerator <output dir> [--accounts n] [--years n] [--rows n]"
+                    + " [--first-year y] [--categories n] [--skew s] [--seasonality a] [--invalid rate]"
+                    + " [--seed n] [--hashed] [--verify]");
+            return;
+        }
+        File root = new File(args[0]);
+        int accounts = 100;
+        int years = 3;
+        int rows = 1000;
+        int firstYear = 2023;
+        int categories = 12;
+        double skew = 1.0;
+        double seasonality = 0.3;
+        double invalidRate = 0;
+        long seed = 1;
+        boolean hashed = false;
+        boolean verify = false;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--accounts": accounts = Integer.parseInt(args[++i]); break;
+                    case "--years": years = Integer.parseInt(args[++i]); break;
+                    case "--rows": rows = Integer.parseInt(args[++i]); break;
+                    case "--first-year": firstYear = Integer.parseInt(args[++i]); break;
+                    case "--categories": categories = Integer.parseInt(args[++i]); break;
+                    case "--skew": skew = Double.parseDouble(args[++i]); break;
+                    case "--seasonality": seasonality = Double.parseDouble(args[++i]); break;
+                    case "--invalid": invalidRate = Double.parseDouble(args[++i]); break;
+                    case "--seed": seed = Long.parseLong(args[++i]); break;
+                    case "--hashed": hashed = true; break;
+                    case "--verify": verify = true; break;
+                    default:
+                        System.err.println("Unknown option: " + args[i]);
+                        return;
+                }
+            }
+            if (firstYear < 1000 || firstYear + years - 1 > 9999) {
+                System.err.println("Years must stay within 1000-9999");
+                return;
+            }
+            if (!root.isDirectory() && !root.mkdirs()) {
+                System.err.println("Cannot create " + root);
+                return;
+            }
+
+            long start = System.nanoTime();
+            DatasetGenerator generator = new DatasetGenerator(seed, categories, skew, seasonality, invalidRate);
+            long invalid = generator.generate(root, accounts, years, firstYear, rows, hashed);
+            System.out.printf("Generated %d accounts x %d years x %d rows (%d invalid) in %.1f s under %s%n",
+                    accounts, years, rows, invalid, (System.nanoTime() - start) / 1e9, root);
+
+            if (verify) {
+                int failed = 0;
+                for (int i = 0; i < accounts; i++) {
+                    for (int y = firstYear; y < firstYear + years; y++) {
+                        String csv = new File(root, "pfm_data/" + username(i) + "/" + y + ".csv").getPath();
+                        if (!ValidationManager.CheckCSVContent.validateWholeCSVFile(y, csv)) failed++;
+                    }
+                }
+                System.out.printf("Verified %d files, %d failed validation%n", accounts * years, failed);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Generation failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Measures the hot paths of the application on generated data, so that a change to
+ * one of them can be compared against the previous release. Year files come from
+ * {@link DatasetGenerator}. Each benchmark runs a
+ * number of warm-up iterations, then timed iterations of a fixed duration, and prints
+ * one CSV line per parameter combination with the time, throughput, allocation and
+ * garbage collection per operation.
+ *
+ * <p>Benchmarks: {@code validateLine} (every line of a year),
+ * {@code parse} (sequential parse of a year file), {@code readCSV.cold} and
+ * {@code readCSV.warm} ({@link Budget#readYear} with an empty and a primed cache),
+ * {@code report.cold} ({@link ReportsManager#generateReport}), {@code predict.cold} and
+ * {@code predict.warm} ({@link PredictionManager} construction) and
+ * {@code getAccountByUsername} (one lookup).</p>
+ *
+ * <p>Year benchmarks run for every combination of {@code --rows} and
+ * {@code --categories}; the account benchmark for every {@code --accounts}. Data is
+ * generated under a temporary directory that is deleted afterwards, and
+ * {@code user.dir} points there while the benchmarks run so that {@link Budget} finds
+ * it.</p>
+ *
+ * <p>Usage: {@code java HotPathBenchmark [--rows 1000,100000] [--categories 8,64]
+ * [--accounts 1000,100000] [--warmup 3] [--iterations 5] [--millis 1000]
+ * [--out results.csv] [benchmark...]}</p>
+ */
+public class HotPathBenchmark {
+
+    private static final int YEAR = 2024;
+    private static final String USER = "bench";
+
+    /** Keeps results alive so the JIT cannot drop the measured work. */
+    private static volatile long sink;
+
+    private interface Op {
+        long run() throws Exception;
+    }
+
+    private static int warmup = 3;
+    private static int iterations = 5;
+    private static long millis = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int[] rows = {1_000, 100_000};
+        int[] categories = {8, 64};
+        int[] accounts = {1_000, 100_000};
+        String out = null;
+        List<String> selected = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--rows": rows = ints(args[++i]); break;
+                case "--categories": categories = ints(args[++i]); break;
+                case "--accounts": accounts = ints(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--millis": millis = Long.parseLong(args[++i]); break;
+                case "--out": out = args[++i]; break;
+                default: selected.add(args[i]);
+            }
+        }
+
+        File root = Files.createTempDirectory("pfm-bench").toFile();
+        String userDir = System.getProperty("user.dir");
+        PrintStream results = out == null ? System.out : new PrintStream(out, "UTF-8");
+        try {
+            System.setProperty("user.dir", root.getPath());
+            results.println("benchmark,rows,categories,accounts,iterations,ops,ns_per_op,ns_per_op_stdev,"
+                    + "ops_per_sec,alloc_bytes_per_op,gc_count,gc_ms");
+            for (int r : rows) {
+                for (int c : categories) {
+                    runYearBenchmarks(root, r, c, selected, results);
+                }
+            }
+            for (int a : accounts) {
+                if (!isSelected(selected, "getAccountByUsername")) continue;
+                runAccountBenchmark(root, a, results);
+            }
+        } finally {
+            System.setProperty("user.dir", userDir);
+            if (results != System.out) results.close();
+            delete(root);
+        }
+    }
+
+    private static void runYearBenchmarks(File root, int rows, int categories, List<String> selected,
+                                          PrintStream results) throws Exception {
+        File userDirectory = new File(root, "pfm_data/" + USER);
+        delete(userDirectory);
+        if (!userDirectory.mkdirs()) throw new IOException("Cannot create " + userDirectory);
+        File csv = new File(userDirectory, YEAR + ".csv");
+        new DatasetGenerator(1, categories, 1.0, 0.3, 0).writeYear(csv, YEAR, rows,
+                new SplittableRandom(rows * 31L + categories));
+        String[] lines = Files.readAllLines(csv.toPath()).toArray(new String[0]);
+
+        Budget budget = new Budget(new Account("bench-id", USER, "", "", ""));
+        CategoryDictionary dictionary = CategoryDictionary.forDirectory(userDirectory);
+        ParsedYearCache cache = ParsedYearCache.shared();
+        String params = rows + "," + categories + ",";
+
+        if (isSelected(selected, "validateLine")) {
+            report(results, "validateLine", params, measure(() -> {
+                long valid = 0;
+                for (String line : lines) {
+                    if (ValidationManager.CheckCSVContent.validateLine(YEAR, line)) valid++;
+                }
+                return valid;
+            }));
+        }
+        if (isSelected(selected, "parse")) {
+            report(results, "parse", params, measure(() -> {
+                TransactionTable.Builder builder = new TransactionTable.Builder(dictionary);
+                return YearFileParser.parse(csv.getPath(), YEAR, false, dictionary, builder).getValidRows()
+                        + builder.build().size();
+            }));
+        }
+        if (isSelected(selected, "readCSV.cold")) {
+            report(results, "readCSV.cold", params, measure(() -> {
+                cache.clear();
+                return budget.readYear(YEAR).size();
+            }));
+        }
+        if (isSelected(selected, "readCSV.warm")) {
+            budget.readYear(YEAR);
+            report(results, "readCSV.warm", params, measure(() -> budget.readYear(YEAR).size()));
+        }
+        if (isSelected(selected, "report.cold")) {
+            report(results, "report.cold", params, measure(() -> {
+                cache.clear();
+                return ReportsManager.generateReport(userDirectory, YEAR) ? 1 : 0;
+            }));
+        }
+        if (isSelected(selected, "predict.cold")) {
+            report(results, "predict.cold", params, measure(() -> {
+                cache.clear();
+                return new PredictionManager(csv.getPath()).getTotalExpenses();
+            }));
+        }
+        if (isSelected(selected, "predict.warm")) {
+            new PredictionManager(csv.getPath());
+            report(results, "predict.warm", params,
+                    measure(() -> new PredictionManager(csv.getPath()).getTotalExpenses()));
+        }
+        cache.clear();
+    }
+
+    private static void runAccountBenchmark(File root, int accounts, PrintStream results) throws Exception {
+        File file = new File(root, "accounts-" + accounts + ".txt");
+        String[] usernames = new String[accounts];
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (int i = 0; i < accounts; i++) {
+                usernames[i] = "user" + i;
+                writer.write("id-" + i + "|" + usernames[i] + "|Password#" + i + "|question|answer");
+                writer.newLine();
+            }
+        }
+        AccountDAO dao = new AccountDAO(file.getPath());
+
+        // Look up a fixed pseudo-random sequence of existing users
+        Random random = new Random(accounts);
+        String[] lookups = new String[1024];
+        for (int i = 0; i < lookups.length; i++) lookups[i] = usernames[random.nextInt(accounts)];
+        int[] next = {0};
+        report(results, "getAccountByUsername", ",," + accounts, measure(() -> {
+            Account account = dao.getAccountByUsername(lookups[next[0]++ & (lookups.length - 1)]);
+            return account == null ? 0 : 1;
+        }));
+    }
+
+    /**
+     * Result of one benchmark: nanoseconds per operation of each timed iteration, plus
+     * allocation and GC over all of them.
+     */
+    private static final class Measurement {
+        final double[] nanosPerOp = new double[iterations];
+        long ops;
+        long allocatedBytes;
+        long gcCount;
+        long gcMillis;
+    }
+
+    private static Measurement measure(Op op) throws Exception {
+        for (int i = 0; i < warmup; i++) iterate(op);
+
+        Measurement m = new Measurement();
+        long allocated = allocatedBytes();
+        long[] gc = gcTotals();
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            long ops = iterate(op);
+            m.nanosPerOp[i] = (double) (System.nanoTime() - start) / ops;
+            m.ops += ops;
+        }
+        m.allocatedBytes = allocatedBytes() - allocated;
+        long[] gcAfter = gcTotals();
+        m.gcCount = gcAfter[0] - gc[0];
+        m.gcMillis = gcAfter[1] - gc[1];
+        return m;
+    }
+
+    /** Runs the operation until the iteration time is up, at least once. */
+    private static long iterate(Op op) throws Exception {
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        long ops = 0;
+        long result = 0;
+        do {
+            result ^= op.run();
+            ops++;
+        } while (System.nanoTime() < deadline);
+        sink = result;
+        return ops;
+    }
+
+    private static void report(PrintStream results, String name, String params, Measurement m) {
+        double mean = Arrays.stream(m.nanosPerOp).average().orElse(0);
+        double variance = Arrays.stream(m.nanosPerOp).map(x -> (x - mean) * (x - mean)).sum()
+                / Math.max(1, m.nanosPerOp.length - 1);
+        results.printf("%s,%s,%d,%d,%.1f,%.1f,%.1f,%.1f,%d,%d%n", name, params, iterations, m.ops, mean,
+                Math.sqrt(variance), mean > 0 ? 1e9 / mean : 0, (double) m.allocatedBytes / m.ops,
+                m.gcCount, m.gcMillis);
+        results.flush();
+    }
+
+    /** @return the bytes allocated by this thread so far, or 0 if the JVM cannot tell. */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {count, time};
+    }
+
+    private static boolean isSelected(List<String> selected, String name) {
+        return selected.isEmpty() || selected.contains(name);
+    }
+
+    private static int[] ints(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        if (file.exists() && !file.delete()) throw new IOException("Cannot delete " + file);
+    }
+}
@@ -0,0 +1,247 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives many concurrent simulated sessions through the same code paths as
+ * {@link IntegrationModule.MainMenu}, to find contention and capacity limits. Each
+ * session logs in as one {@link DatasetGenerator} account (registering it first if
+ * needed), uploads its years through {@link Budget}, then for a number of rounds lists
+ * its years, views a year, prints a report with {@link ReportsManager#analyzeData} and
+ * runs the prediction of menu option 6.
+ *
+ * <p>Sessions run one per task on an executor: one virtual thread per session when the
+ * runtime has them (Java 21 and later) and {@code --threads} is 0, otherwise a fixed
+ * pool of {@code --threads} threads. The console output of the menu operations is
+ * discarded while the load runs. At the end one CSV line per operation gives its
+ * count, errors, throughput and p50/p99/p99.9/max latency, followed by the file I/O of
+ * each operation as counted by {@link IOAccounting}.</p>
+ *
+ * <p>Accounts and data live in {@code --dir} (default: a temporary directory that is
+ * deleted afterwards), which {@code user.dir} points to while the load runs. Password
+ * hashing dominates logins; lower {@code -Dpfm.password.iterations} to load the rest.</p>
+ *
+ * <p>Usage: {@code java LoadDriver [--sessions 1000] [--threads 0] [--rounds 5]
+ * [--years 2] [--rows 1000] [--dir path] [--seed 1]}</p>
+ */
+public class LoadDriver {
+
+    private static final int FIRST_YEAR = 2023;
+    private static final String[] OPERATIONS = {"login", "register", "upload", "list", "view", "report", "predict"};
+
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new LinkedHashMap<>();
+    private final Map<String, String> firstErrors = new ConcurrentHashMap<>();
+
+    private final AuthService authService;
+    private final File staging;
+    private final int years;
+    private final int rounds;
+
+    LoadDriver(AccountDAO accountDAO, File staging, int years, int rounds) {
+        this.authService = new AuthService(accountDAO);
+        this.staging = staging;
+        this.years = years;
+        this.rounds = rounds;
+        for (String operation : OPERATIONS) {
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    private interface Step<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Times one operation.
+     * @return the result, or null if it failed.
+     */
+    @SuppressWarnings("try")
+    private <T> T time(String operation, Step<T> step) {
+        long start = System.nanoTime();
+        try (IOAccounting.Scope io = IOAccounting.begin("load." + operation)) {
+            return step.run();
+        } catch (Exception e) {
+            errors.get(operation).increment();
+            firstErrors.putIfAbsent(operation, String.valueOf(e));
+            return null;
+        } finally {
+            latencies.get(operation).record(System.nanoTime() - start);
+        }
+    }
+
+    /** One simulated user, from login to the last round. */
+    private void session(int index, long seed) {
+        String username = DatasetGenerator.username(index);
+        String password = DatasetGenerator.password(index);
+        Account account = time("login", () -> authService.login(username, password));
+        if (account == null) {
+            time("register", () -> {
+                if (!authService.register(username, password, "What is your favorite color", "blue")) {
+                    throw new IllegalStateException("registration refused for " + username);
+                }
+                return Boolean.TRUE;
+            });
+            account = time("login", () -> authService.login(username, password));
+            if (account == null) return;
+        }
+        Account user = account;
+        Budget budget = new Budget(user);
+
+        for (int y = 0; y < years; y++) {
+            String upload = new File(staging, (FIRST_YEAR + y) + ".csv").getPath();
+            time("upload", () -> budget.saveYear(upload, () -> true, () -> true));
+        }
+
+        SplittableRandom random = new SplittableRandom(seed ^ index);
+        for (int r = 0; r < rounds; r++) {
+            time("list", budget::getYears);
+            int year = FIRST_YEAR + random.nextInt(years);
+            time("view", () -> budget.readYear(year).size());
+            time("report", () -> {
+                ReportsManager.analyzeData(user, year, false);
+                return Boolean.TRUE;
+            });
+            time("predict", () -> {
+                PredictionManager pd = new PredictionManager(budget.getUserDataDir() + "/" + year + ".csv");
+                String status = pd.determineBudgetStatus();
+                if (status.equals("surplus")) pd.determinePossibleAdditionalSpending("Any");
+                else if (status.equals("deficit")) pd.determineDecreaseForSurplus();
+                return pd.forecastNextMonthExpenses();
+            });
+        }
+    }
+
+    /** How sessions are run, for the summary line. */
+    private static String runsOn;
+
+    private static ExecutorService newExecutor(int threads) {
+        if (threads <= 0) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                runsOn = "virtual threads";
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                threads = 4 * Runtime.getRuntime().availableProcessors();
+                System.err.println("No virtual threads on this runtime; using " + threads + " platform threads");
+            }
+        }
+        runsOn = threads + " threads";
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = 1000;
+        int threads = 0;
+        int rounds = 5;
+        int years = 2;
+        int rows = 1000;
+        long seed = 1;
+        File dir = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sessions": sessions = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--rounds": rounds = Integer.parseInt(args[++i]); break;
+                case "--years": years = Integer.parseInt(args[++i]); break;
+                case "--rows": rows = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--dir": dir = new File(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+        if (years < 1) {
+            System.err.println("Years must be at least 1");
+            return;
+        }
+
+        boolean temporary = dir == null;
+        File root = temporary ? Files.createTempDirectory("pfm-load").toFile() : dir.getAbsoluteFile();
+        if (!root.isDirectory() && !root.mkdirs()) {
+            System.err.println("Cannot create " + root);
+            return;
+        }
+        File staging = new File(root, "uploads");
+        if (!staging.isDirectory() && !staging.mkdirs()) {
+            System.err.println("Cannot create " + staging);
+            return;
+        }
+        DatasetGenerator generator = new DatasetGenerator(seed, 12, 1.0, 0.3, 0);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int y = 0; y < years; y++) {
+            generator.writeYear(new File(staging, (FIRST_YEAR + y) + ".csv"), FIRST_YEAR + y, rows, random);
+        }
+
+        PrintStream console = System.out;
+        String userDir = System.getProperty("user.dir");
+        ExecutorService executor = newExecutor(threads);
+        LoadDriver driver = new LoadDriver(new AccountDAO(new File(root, "accounts.txt").getPath()), staging,
+                years, rounds);
+        long wall;
+        try {
+            System.setProperty("user.dir", root.getPath());
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(sessions);
+            for (int s = 0; s < sessions; s++) {
+                int index = s;
+                long sessionSeed = seed;
+                futures.add(executor.submit(() -> driver.session(index, sessionSeed)));
+            }
+            for (Future<?> future : futures) future.get();
+            wall = System.nanoTime() - start;
+        } finally {
+            System.setOut(console);
+            System.setProperty("user.dir", userDir);
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            if (temporary) delete(root);
+        }
+
+        double seconds = wall / 1e9;
+        console.printf("# %d sessions, %s, %d rounds, %d years x %d rows, %.2f s%n", sessions, runsOn,
+                rounds, years, rows, seconds);
+        console.println("operation,count,errors,ops_per_sec,mean_ms,p50_ms,p99_ms,p999_ms,max_ms");
+        for (String operation : OPERATIONS) {
+            LatencyHistogram h = driver.latencies.get(operation);
+            if (h.count() == 0) continue;
+            console.printf("%s,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f%n", operation, h.count(),
+                    driver.errors.get(operation).sum(), h.count() / seconds, h.mean() / 1e6,
+                    h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.percentile(99.9) / 1e6, h.max() / 1e6);
+        }
+        console.println("operation,runs,opens,reopens,metadata,reads,bytes_read,writes,bytes_written,io_ms");
+        for (Map.Entry<String, IOAccounting.Stats> io : IOAccounting.snapshot().entrySet()) {
+            IOAccounting.Stats st = io.getValue();
+            console.printf("%s,%d,%d,%d,%d,%d,%d,%d,%d,%.3f%n", io.getKey(), st.runs(), st.opens(), st.reopens(),
+                    st.metadata(), st.reads(), st.bytesRead(), st.writes(), st.bytesWritten(), st.nanos() / 1e6);
+        }
+        for (Map.Entry<String, String> error : driver.firstErrors.entrySet()) {
+            System.err.println("First " + error.getKey() + " error: " + error.getValue());
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        if (file.exists() && !file.delete()) throw new IOException("Cannot delete " + file);
+    }
+}
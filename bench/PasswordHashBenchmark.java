@@ -0,0 +1,52 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures login throughput of {@link PasswordHasher} against its work factor, to
+ * size {@code pfm.password.iterations} and {@code pfm.password.threads} for a peak
+ * login rate. Each run keeps the pool saturated with verifications of one stored hash
+ * for a fixed time and prints one CSV line per iteration count.
+ *
+ * <p>Usage: {@code java PasswordHashBenchmark [seconds] [threads] [iterations...]}</p>
+ */
+public class PasswordHashBenchmark {
+
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int[] costs = {10_000, 50_000, PasswordHasher.DEFAULT_ITERATIONS, 250_000};
+        if (args.length > 2) {
+            costs = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) costs[i - 2] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println("iterations,threads,seconds,logins,logins_per_sec,mean_latency_ms");
+        for (int iterations : costs) {
+            PasswordHasher hasher = new PasswordHasher(iterations, threads, threads * 4);
+            String stored = hasher.hash("Benchmark#Password1");
+            hasher.verify("Benchmark#Password1", stored); // warm up
+
+            AtomicLong logins = new AtomicLong();
+            AtomicLong latencyNanos = new AtomicLong();
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            CompletableFuture<?>[] clients = new CompletableFuture<?>[threads * 2];
+            for (int c = 0; c < clients.length; c++) {
+                clients[c] = CompletableFuture.runAsync(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        if (!hasher.verifyAsync("Benchmark#Password1", stored).join()) {
+                            throw new IllegalStateException("verification failed");
+                        }
+                        latencyNanos.addAndGet(System.nanoTime() - start);
+                        logins.incrementAndGet();
+                    }
+                });
+            }
+            CompletableFuture.allOf(clients).join();
+
+            long count = logins.get();
+            System.out.printf("%d,%d,%d,%d,%.1f,%.2f%n", iterations, threads, seconds, count,
+                    count / (double) seconds, count == 0 ? 0 : latencyNanos.get() / 1e6 / count);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The accounts of {@code accounts.txt}, held in memory and indexed by id and
+ * username; every change is saved through an {@link AccountJournal}.
+ */
+class AccountDAO {
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+    // Secondary index username -> id, kept in step with accounts
+    private final ConcurrentHashMap<String, String> idsByUsername = new ConcurrentHashMap<>();
+    private final String ACCOUNT_FILE;
+
+    private final AccountJournal journal;
+
+    public AccountDAO() {
+        this("accounts.txt");
+    }
+
+    /**
+     * Loads the accounts of another file than {@code accounts.txt}, for tools and
+     * benchmarks that must not touch the real accounts.
+     */
+    AccountDAO(String accountFile) {
+        ACCOUNT_FILE = accountFile;
+        journal = new AccountJournal(ACCOUNT_FILE, accounts::values);
+        loadAccountsFromFile();
+    }
+
+    @SuppressWarnings("try")
+    private void loadAccountsFromFile() {
+        // Replays the accounts.txt snapshot plus the change journal written since
+        try (IOAccounting.Scope io = IOAccounting.begin("accounts.load")) {
+            journal.load(this::index, this::unindex);
+        } catch (IOException e) {
+            // If file doesn't exist or is corrupted, ignore for now
+            System.err.println("Could not load accounts from file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stores an account under its id and username, replacing any previous
+     * version of the same account. Changes are applied by the journal while it
+     * orders their records, so replaying it rebuilds the same state.
+     */
+    private void index(Account account) {
+        Account previous = accounts.put(account.getId(), account);
+        if (previous != null && !previous.getUsername().equals(account.getUsername())) {
+            idsByUsername.remove(previous.getUsername(), previous.getId());
+        }
+        idsByUsername.put(account.getUsername(), account.getId());
+    }
+
+    private void unindex(String id) {
+        Account removed = accounts.remove(id);
+        if (removed != null) {
+            idsByUsername.remove(removed.getUsername(), id);
+        }
+    }
+
+    /**
+     * Saves a new account; it is only added once its journal record is durable.
+     * @throws IOException if the account cannot be saved; it is then not added.
+     */
+    @SuppressWarnings("try")
+    public void createAccount(Account account) throws IOException {
+        try (IOAccounting.Scope io = IOAccounting.begin("accounts.create")) {
+            journal.logCreate(account, () -> index(account));
+        }
+    }
+
+    /**
+     * Creates an account unless its username is already taken, atomically with respect
+     * to other registrations.
+     * @return false if the username is taken
+     * @throws IOException if the account cannot be saved; the username is then free again.
+     */
+    public boolean createAccountIfAbsent(Account account) throws IOException {
+        if (idsByUsername.putIfAbsent(account.getUsername(), account.getId()) != null) return false;
+        try {
+            createAccount(account);
+        } catch (IOException | RuntimeException e) {
+            idsByUsername.remove(account.getUsername(), account.getId());
+            throw e;
+        }
+        return true;
+    }
+
+    public Account getAccountById(String id) {
+        return accounts.get(id);
+    }
+
+    public Account getAccountByUsername(String username) {
+        String id = username == null ? null : idsByUsername.get(username);
+        return id == null ? null : accounts.get(id);
+    }
+
+    public List<Account> getAllAccounts() {
+        return new ArrayList<>(accounts.values());
+    }
+
+    @SuppressWarnings("try")
+    public void updateAccount(Account account) {
+        try (IOAccounting.Scope io = IOAccounting.begin("accounts.update")) {
+            journal.logUpdate(account, () -> index(account));
+        } catch (IOException e) {
+            System.err.println("Could not save accounts to file: " + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("try")
+    public void deleteAccount(String id) {
+        try (IOAccounting.Scope io = IOAccounting.begin("accounts.delete")) {
+            journal.logDelete(id, () -> unindex(id));
+        } catch (IOException e) {
+            System.err.println("Could not save accounts to file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,322 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only storage for the accounts file. {@code accounts.txt} is kept as a
+ * snapshot in its usual {@code id|username|password|secretQuestion|secretAnswer}
+ * format, and every change after it is appended to {@code accounts.txt.journal} as a
+ * create, update or delete (tombstone) record. Loading replays the snapshot and then
+ * the journal.
+ *
+ * <p>Appends use group commit: records from concurrent callers are written and
+ * fsynced together, and each call returns only once its record is durable. A batch
+ * that cannot be written is cut off the journal again, and every caller in it gets
+ * the error. Once the
+ * journal grows past {@link #COMPACT_THRESHOLD} records it is rotated and folded into a
+ * new snapshot on a background thread.</p>
+ *
+ * <p>Each record ends with a CRC32 of its content, so a record torn by a crash is
+ * detected and ignored on replay.</p>
+ */
+class AccountJournal {
+
+    /** Number of journal records after which a compaction is started. */
+    static final int COMPACT_THRESHOLD = 1000;
+
+    private static final String CREATE = "C";
+    private static final String UPDATE = "U";
+    private static final String DELETE = "D";
+
+    private final File snapshot;
+    private final File journal;
+    private final File rotated;
+    private final Supplier<Collection<Account>> accounts;
+
+    /** One logged change, from its append until its batch has been written or has failed. */
+    private static final class Entry {
+        final String line;
+        final Runnable apply;
+        // Guarded by flushLock
+        boolean done;
+        IOException failure;
+
+        Entry(String line, Runnable apply) {
+            this.line = line;
+            this.apply = apply;
+        }
+    }
+
+    // Records waiting for the next group commit
+    private final List<Entry> pending = new ArrayList<>();
+
+    // Held while writing to the journal channel
+    private final Object flushLock = new Object();
+    private FileChannel channel;
+    private int records;
+    private boolean torn; // a failed batch could not be cut off the journal
+
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "accounts-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a journal for an accounts file.
+     * @param snapshotPath path of the accounts snapshot file.
+     * @param accounts supplies the current accounts when a snapshot is written.
+     */
+    AccountJournal(String snapshotPath, Supplier<Collection<Account>> accounts) {
+        this.snapshot = new File(snapshotPath);
+        this.journal = new File(snapshotPath + ".journal");
+        this.rotated = new File(snapshotPath + ".journal.old");
+        this.accounts = accounts;
+    }
+
+    /**
+     * Replays the snapshot and the journal, then folds the journal into a fresh
+     * snapshot so the next start only has to read one file.
+     * @param put receives every created or updated account, in order.
+     * @param remove receives the id of every deleted account, in order.
+     * @throws IOException if the files cannot be read or written.
+     */
+    void load(Consumer<Account> put, Consumer<String> remove) throws IOException {
+        if (IOAccounting.isFile(snapshot)) {
+            try (BufferedReader reader = reader(snapshot)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Account account = parseAccount(line.split("\\|"), 0);
+                    if (account != null) put.accept(account);
+                }
+            }
+        }
+
+        boolean replayed = replay(rotated, put, remove) | replay(journal, put, remove);
+        if (replayed) {
+            writeSnapshot(formatAll());
+            IOAccounting.deleteIfExists(rotated.toPath());
+            IOAccounting.deleteIfExists(journal.toPath());
+        }
+    }
+
+    /**
+     * Logs a new account; returns once the record is durable. {@code apply} makes the
+     * change in memory once the record is durable, and is not run if it cannot be
+     * written. Changes are applied in the order of their records, so memory and journal
+     * see concurrent changes in the same order.
+     * @throws IOException if the record cannot be written.
+     */
+    void logCreate(Account account, Runnable apply) throws IOException {
+        append(CREATE + "|" + format(account), apply);
+    }
+
+    /** Logs a changed account like {@link #logCreate}. */
+    void logUpdate(Account account, Runnable apply) throws IOException {
+        append(UPDATE + "|" + format(account), apply);
+    }
+
+    /** Logs a deleted account like {@link #logCreate}. */
+    void logDelete(String id, Runnable apply) throws IOException {
+        append(DELETE + "|" + id, apply);
+    }
+
+    private void append(String record, Runnable apply) throws IOException {
+        Entry entry = new Entry(record + '|' + checksum(record) + '\n', apply);
+        synchronized (pending) {
+            pending.add(entry);
+        }
+
+        synchronized (flushLock) {
+            // A previous leader may already have committed this record with its batch
+            if (!entry.done) commit();
+            if (entry.failure != null) {
+                // Each caller gets its own exception; the cause is shared by the batch
+                throw new IOException(entry.failure.getMessage(), entry.failure);
+            }
+        }
+    }
+
+    /** Writes every pending record as one batch. Caller holds {@code flushLock}. */
+    private void commit() {
+        List<Entry> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        StringBuilder text = new StringBuilder();
+        if (torn) text.append('\n'); // end the torn line so only it fails its checksum
+        for (Entry entry : batch) text.append(entry.line);
+
+        IOException failure = null;
+        try {
+            write(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+            torn = false;
+        } catch (IOException e) {
+            failure = e;
+        }
+        for (Entry entry : batch) {
+            if (failure == null) {
+                entry.apply.run();
+            } else {
+                entry.failure = failure;
+            }
+            entry.done = true;
+        }
+        if (failure != null) return;
+
+        records += batch.size();
+        if (records >= COMPACT_THRESHOLD && !IOAccounting.exists(rotated) && compacting.compareAndSet(false, true)) {
+            try {
+                rotate();
+            } catch (IOException e) {
+                // The records are durable either way; compaction is retried on the next commit
+                compacting.set(false);
+                System.err.println("Could not rotate accounts journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Appends bytes to the journal and forces them to disk. On failure the journal is
+     * truncated back to where it was, so no part of the batch is replayed.
+     */
+    private void write(ByteBuffer bytes) throws IOException {
+        if (channel == null) {
+            channel = IOAccounting.openChannel(journal.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        long end = channel.size();
+        try {
+            while (bytes.hasRemaining()) IOAccounting.write(channel, bytes);
+            IOAccounting.force(channel, false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(end);
+                IOAccounting.force(channel, false);
+            } catch (IOException t) {
+                e.addSuppressed(t);
+                torn = true;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Moves the journal aside and captures the accounts it describes; the snapshot is
+     * then written in the background while new records go to a fresh journal.
+     * Caller holds {@code flushLock}.
+     */
+    private void rotate() throws IOException {
+        channel.close();
+        channel = null;
+        IOAccounting.move(journal.toPath(), rotated.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        records = 0;
+        List<String> lines = formatAll();
+
+        compactor.execute(() -> {
+            try {
+                writeSnapshot(lines);
+                IOAccounting.deleteIfExists(rotated.toPath());
+            } catch (IOException e) {
+                // The rotated journal is kept and replayed on next load
+                System.err.println("Could not compact accounts file: " + e.getMessage());
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    /** Writes a complete snapshot to a temporary file and renames it into place. */
+    private void writeSnapshot(List<String> lines) throws IOException {
+        File temp = new File(snapshot.getPath() + ".tmp");
+        try (FileOutputStream out = IOAccounting.openOutput(temp, false);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+            writer.flush();
+            IOAccounting.sync(out);
+        }
+        IOAccounting.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<String> formatAll() {
+        List<String> lines = new ArrayList<>();
+        for (Account account : accounts.get()) lines.add(format(account));
+        return lines;
+    }
+
+    /**
+     * Applies the records of one journal file.
+     * @return true if the file existed.
+     */
+    private static boolean replay(File file, Consumer<Account> put, Consumer<String> remove) throws IOException {
+        if (!IOAccounting.isFile(file)) return false;
+        try (BufferedReader reader = reader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int split = line.lastIndexOf('|');
+                if (split < 0 || !line.substring(split + 1).equals(checksum(line.substring(0, split)))) {
+                    System.err.println("Skipping damaged account journal record.");
+                    continue;
+                }
+                String[] parts = line.substring(0, split).split("\\|");
+                if (parts[0].equals(DELETE) && parts.length == 2) {
+                    remove.accept(parts[1]);
+                } else if (parts[0].equals(CREATE) || parts[0].equals(UPDATE)) {
+                    Account account = parseAccount(parts, 1);
+                    if (account != null) put.accept(account);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static Account parseAccount(String[] parts, int from) {
+        // Format: id|username|password|secretQuestion|secretAnswer
+        if (parts.length - from != 5) return null;
+        return new Account(parts[from], parts[from + 1], parts[from + 2], parts[from + 3], parts[from + 4]);
+    }
+
+    private static String format(Account account) {
+        return String.join("|",
+            account.getId(),
+            account.getUsername(),
+            account.getPassword(),
+            account.getSecretQuestion(),
+            account.getSecretAnswer()
+        );
+    }
+
+    private static String checksum(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static BufferedReader reader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(IOAccounting.openInput(file), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,559 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP/JSON API over the same operations as the main menu, so that many users
+ * can be served by one process. The server only listens on the loopback interface.
+ *
+ * <pre>
+ * POST   /api/register             {"username":..,"password":..,"secretQuestion":..,"secretAnswer":..}
+ * POST   /api/login                {"username":..,"password":..}  -&gt; {"token":..}
+ * POST   /api/logout
+ * GET    /api/years                -&gt; {"years":[..]}
+ * GET    /api/years/YYYY           -&gt; {"year":..,"transactions":[{"date":..,"category":..,"amount":..}]}
+ * PUT    /api/years/YYYY           CSV body; ?overwrite=true&amp;acceptInvalid=true
+ * DELETE /api/years/YYYY
+ * GET    /api/reports/YYYY         JSON lines, or ?format=csv
+ * GET    /api/predictions/YYYY     ?category=..&amp;amount=..&amp;priority=..(up to 3)
+ * </pre>
+ *
+ * <p>Every call but register and login needs an {@code Authorization: Bearer <token>}
+ * header. A token expires once unused for {@code pfm.api.sessionTimeout} seconds
+ * (default 30 minutes). Errors are {@code {"error":..}} with status 400 (bad input), 401 (not logged
+ * in), 404, 405, 413 (upload too large) or 500 (I/O error).</p>
+ *
+ * <p>Each request runs on its own virtual thread when the runtime has them (Java 21
+ * and later); otherwise requests share a fixed pool of {@code pfm.api.threads} threads
+ * (default 4 per core). The port defaults to the {@code pfm.api.port} system property
+ * or 8080.</p>
+ */
+public final class ApiServer {
+
+    private static final int MAX_UPLOAD = Integer.getInteger("pfm.api.maxUpload", 64 << 20);
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final long SESSION_TIMEOUT =
+            TimeUnit.SECONDS.toNanos(Long.getLong("pfm.api.sessionTimeout", 30 * 60));
+    /** Minimum time between two sweeps of the expired sessions. */
+    private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+    /** Resources whose requests are accounted separately; others share one name. */
+    private static final List<String> RESOURCES =
+            List.of("register", "login", "logout", "years", "reports", "predictions");
+
+    private final AccountDAO accountDAO;
+    private final AuthService authService;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Binds a server to a loopback port; call {@link #start()} to serve requests.
+     * @param port the port, or 0 for any free port.
+     * @param accountDAO the accounts to authenticate against.
+     * @throws IOException if the port cannot be bound.
+     */
+    public ApiServer(int port, AccountDAO accountDAO) throws IOException {
+        this.accountDAO = accountDAO;
+        this.authService = new AuthService(accountDAO);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+    }
+
+    /**
+     * Uses a virtual thread per request when available, without requiring Java 21 to
+     * build.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(
+                    Integer.getInteger("pfm.api.threads", 4 * Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    /** Starts serving requests. */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to a number of seconds for running ones.
+     * @param delay the maximum wait, in seconds.
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+    }
+
+    /** @return the bound port. */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * The account behind a token, and when the token was last used.
+     */
+    private static final class Session {
+        final Account account;
+        volatile long lastUsed = System.nanoTime();
+
+        Session(Account account) {
+            this.account = account;
+        }
+
+        boolean expired(long now) {
+            return now - lastUsed > SESSION_TIMEOUT;
+        }
+    }
+
+    /**
+     * Failure with an HTTP status, answered as {@code {"error":..}}.
+     */
+    private static final class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    @SuppressWarnings("try")
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+            Map<String, List<String>> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+            String operation = "api." + (RESOURCES.contains(path[0]) ? path[0] : "unknown");
+            try (IOAccounting.Scope io = IOAccounting.begin(operation)) {
+                route(exchange, method, path, query);
+            } catch (ApiException e) {
+                sendJson(exchange, e.status, "{\"error\":" + quote(e.getMessage()) + "}");
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, 400, "{\"error\":" + quote(String.valueOf(e.getMessage())) + "}");
+            } catch (IOException | RuntimeException e) {
+                sendJson(exchange, 500, "{\"error\":" + quote(String.valueOf(e.getMessage())) + "}");
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange, String method, String[] path, Map<String, List<String>> query)
+            throws IOException, ApiException {
+        String resource = path[0];
+        if (resource.equals("register") && path.length == 1) {
+            requireMethod(method, "POST");
+            Map<String, String> body = parseObject(readBody(exchange, 64 * 1024));
+            String username = required(body, "username");
+            String password = required(body, "password");
+            if (!ValidationManager.UserCredentialValueLimiter.restrictPasswordValues(password)) {
+                throw new IllegalArgumentException(
+                        "Password must be at least 8 characters, and include upper, lower, number, and special char.");
+            }
+            if (!authService.register(username, password, required(body, "secretQuestion"),
+                    required(body, "secretAnswer"))) {
+                throw new IllegalArgumentException("Registration failed. Username might already exist.");
+            }
+            sendJson(exchange, 201, "{\"username\":" + quote(username) + "}");
+            return;
+        }
+        if (resource.equals("login") && path.length == 1) {
+            requireMethod(method, "POST");
+            Map<String, String> body = parseObject(readBody(exchange, 64 * 1024));
+            Account account = authService.login(required(body, "username"), required(body, "password"));
+            if (account == null) throw new ApiException(401, "Invalid username or password.");
+            String token = newToken();
+            sessions.put(token, new Session(account));
+            expireSessions();
+            sendJson(exchange, 200, "{\"token\":" + quote(token) + "}");
+            return;
+        }
+
+        String token = bearerToken(exchange);
+        Session session = token == null ? null : sessions.get(token);
+        long now = System.nanoTime();
+        if (session != null && session.expired(now)) {
+            sessions.remove(token, session);
+            session = null;
+        }
+        if (session == null || accountDAO.getAccountById(session.account.getId()) == null) {
+            throw new ApiException(401, "Not logged in.");
+        }
+        session.lastUsed = now;
+        Account account = session.account;
+
+        if (resource.equals("logout") && path.length == 1) {
+            requireMethod(method, "POST");
+            sessions.remove(token);
+            sendJson(exchange, 200, "{}");
+        } else if (resource.equals("years") && path.length == 1) {
+            requireMethod(method, "GET");
+            List<Integer> years = new Budget(account).getYears();
+            sendJson(exchange, 200, "{\"years\":" + years.toString().replace(" ", "") + "}");
+        } else if (resource.equals("years") && path.length == 2) {
+            int year = parseYear(path[1]);
+            Budget budget = new Budget(account);
+            switch (method) {
+                case "GET": sendJson(exchange, 200, transactions(year, budget.readYear(year))); break;
+                case "PUT": upload(exchange, budget, year, query); break;
+                case "DELETE":
+                    budget.deleteYear(year);
+                    sendJson(exchange, 200, "{\"deleted\":" + year + "}");
+                    break;
+                default: throw new ApiException(405, "Method not allowed: " + method);
+            }
+        } else if (resource.equals("reports") && path.length == 2) {
+            requireMethod(method, "GET");
+            report(exchange, new Budget(account), parseYear(path[1]), first(query, "format", "json"));
+        } else if (resource.equals("predictions") && path.length == 2) {
+            requireMethod(method, "GET");
+            predict(exchange, new Budget(account), parseYear(path[1]), query);
+        } else {
+            throw new ApiException(404, "Not found: " + exchange.getRequestURI().getPath());
+        }
+    }
+
+    private static String transactions(int year, TransactionTable table) {
+        StringBuilder json = new StringBuilder(64 + table.size() * 64);
+        json.append("{\"year\":").append(year).append(",\"transactions\":[");
+        TransactionTable.Cursor tr = table.cursor();
+        boolean first = true;
+        while (tr.next()) {
+            if (!first) json.append(',');
+            first = false;
+            json.append(String.format("{\"date\":\"%02d/%02d/%04d\",\"category\":", tr.getMonth(), tr.getDay(), tr.getYear()))
+                    .append(quote(tr.getCategory())).append(",\"amount\":").append(tr.getAmount()).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void upload(HttpExchange exchange, Budget budget, int year, Map<String, List<String>> query)
+            throws IOException {
+        // saveYear takes the year from the file name, so stage the body as YYYY.csv
+        Path staging = Files.createTempDirectory("pfm-upload");
+        Path csv = staging.resolve(year + ".csv");
+        try {
+            try (InputStream in = exchange.getRequestBody(); OutputStream out = Files.newOutputStream(csv)) {
+                byte[] buffer = new byte[64 * 1024];
+                long total = 0;
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    total += n;
+                    if (total > MAX_UPLOAD) {
+                        sendJson(exchange, 413, "{\"error\":\"Upload larger than " + MAX_UPLOAD + " bytes\"}");
+                        return;
+                    }
+                    out.write(buffer, 0, n);
+                }
+            }
+            boolean overwrite = Boolean.parseBoolean(first(query, "overwrite", "false"));
+            boolean acceptInvalid = Boolean.parseBoolean(first(query, "acceptInvalid", "false"));
+            if (budget.saveYear(csv.toString(), () -> acceptInvalid, () -> overwrite)) {
+                sendJson(exchange, 201, "{\"saved\":" + year + "}");
+            } else {
+                sendJson(exchange, 409, "{\"error\":\"No changes have been made.\"}");
+            }
+        } finally {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(staging);
+        }
+    }
+
+    private static void report(HttpExchange exchange, Budget budget, int year, String format) throws IOException {
+        File csv = new File(budget.getUserDataDir(), year + ".csv");
+        if (!csv.isFile()) throw new IllegalArgumentException("No data found for year " + year);
+        YearCube cube = ParsedYearCache.shared().cube(csv, year);
+        if (!cube.isValid()) throw new IllegalArgumentException("Invalid file for year " + year);
+
+        StringBuilder body = new StringBuilder(2048);
+        String contentType;
+        if (format.equals("csv")) {
+            new ReportWriter.Csv(body).write(cube);
+            contentType = "text/csv; charset=utf-8";
+        } else if (format.equals("json")) {
+            new ReportWriter.JsonLines(body).write(cube);
+            contentType = "application/x-ndjson; charset=utf-8";
+        } else {
+            throw new IllegalArgumentException("Unknown report format: " + format);
+        }
+        send(exchange, 200, contentType, body.toString());
+    }
+
+    private static void predict(HttpExchange exchange, Budget budget, int year, Map<String, List<String>> query)
+            throws IOException {
+        File csv = new File(budget.getUserDataDir(), year + ".csv");
+        if (!csv.isFile()) throw new IllegalArgumentException("No data found for year " + year);
+        PredictionManager pd = new PredictionManager(csv.getPath());
+
+        StringBuilder json = new StringBuilder(512);
+        String status = pd.determineBudgetStatus();
+        json.append("{\"status\":").append(quote(status))
+                .append(",\"income\":").append(pd.getTotalIncome())
+                .append(",\"expenses\":").append(pd.getTotalExpenses());
+        if (status.equals("surplus")) {
+            json.append(",\"additionalSpending\":").append(pd.determinePossibleAdditionalSpending("Any"));
+        } else if (status.equals("deficit")) {
+            json.append(",\"requiredCut\":").append(pd.determineDecreaseForSurplus());
+        }
+
+        json.append(",\"nextMonth\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> expected : pd.forecastNextMonthExpenses().entrySet()) {
+            if (!first) json.append(',');
+            first = false;
+            json.append(quote(expected.getKey())).append(':').append(expected.getValue());
+        }
+        json.append('}');
+
+        String category = first(query, "category", null);
+        if (category != null) {
+            List<String> priorities = query.getOrDefault("priority", List.of());
+            for (String name : priorities) {
+                if (!pd.hasCategory(name)) throw new IllegalArgumentException("Invalid category: " + name);
+            }
+            if (!pd.hasCategory(category)) throw new IllegalArgumentException("Invalid category: " + category);
+            ScenarioEngine.Scenario scenario = new ScenarioEngine.Scenario(priorities.toArray(new String[0]),
+                    category, Integer.parseInt(first(query, "amount", "0")));
+            ScenarioEngine.Result result = new ScenarioEngine(pd).evaluate(List.of(scenario)).get(0);
+            json.append(",\"scenario\":{\"category\":").append(quote(category))
+                    .append(",\"adjustedAmount\":").append(result.getAdjustedAmount())
+                    .append(",\"remaining\":").append(result.getRemaining())
+                    .append(",\"expenses\":").append(result.getTotalExpenses())
+                    .append(",\"annualSavings\":").append(result.getAnnualSavings()).append('}');
+        }
+        sendJson(exchange, 200, json.append('}').toString());
+    }
+
+    /** Drops the expired sessions, at most once per {@link #SWEEP_INTERVAL}. */
+    private void expireSessions() {
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL || !lastSweep.compareAndSet(last, now)) return;
+        sessions.values().removeIf(session -> session.expired(now));
+    }
+
+    private static void requireMethod(String method, String expected) throws ApiException {
+        if (!method.equals(expected)) throw new ApiException(405, "Method not allowed: " + method);
+    }
+
+    private static int parseYear(String year) {
+        if (!year.matches("[1-9]\\d{3}")) throw new IllegalArgumentException("Year must be YYYY: " + year);
+        return Integer.parseInt(year);
+    }
+
+    private static String required(Map<String, String> body, String key) {
+        String value = body.get(key);
+        if (value == null) throw new IllegalArgumentException("Missing field: " + key);
+        return value.trim();
+    }
+
+    private static String first(Map<String, List<String>> query, String key, String fallback) {
+        List<String> values = query.get(key);
+        return values == null || values.isEmpty() ? fallback : values.get(0);
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) return null;
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[24];
+        RANDOM.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(48);
+        for (byte b : bytes) token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return token.toString();
+    }
+
+    private static String readBody(HttpExchange exchange, int limit) throws IOException, ApiException {
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (body.size() + n > limit) throw new ApiException(413, "Request body too large");
+                body.write(buffer, 0, n);
+            }
+            return body.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, List<String>> parseQuery(String rawQuery) {
+        Map<String, List<String>> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        }
+        return query;
+    }
+
+    /**
+     * Parses a flat JSON object whose values are strings, numbers, booleans or null;
+     * every value is returned as its text (null as a missing key).
+     */
+    static Map<String, String> parseObject(String json) {
+        Map<String, String> object = new LinkedHashMap<>();
+        int[] pos = {skip(json, 0)};
+        expect(json, pos, '{');
+        if (peek(json, pos) == '}') {
+            pos[0]++;
+        } else {
+            while (true) {
+                String key = parseString(json, pos);
+                expect(json, pos, ':');
+                String value;
+                if (peek(json, pos) == '"') {
+                    value = parseString(json, pos);
+                } else {
+                    int start = pos[0];
+                    while (pos[0] < json.length() && ",} \t\r\n".indexOf(json.charAt(pos[0])) < 0) pos[0]++;
+                    value = json.substring(start, pos[0]);
+                    if (!value.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?|true|false|null")) {
+                        throw new IllegalArgumentException("Invalid JSON value for " + key);
+                    }
+                    if (value.equals("null")) value = null;
+                }
+                if (value != null) object.put(key, value);
+                if (peek(json, pos) == ',') {
+                    pos[0]++;
+                    continue;
+                }
+                expect(json, pos, '}');
+                break;
+            }
+        }
+        if (skip(json, pos[0]) != json.length()) throw new IllegalArgumentException("Invalid JSON: trailing data");
+        return object;
+    }
+
+    private static int skip(String json, int pos) {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) pos++;
+        return pos;
+    }
+
+    private static char peek(String json, int[] pos) {
+        pos[0] = skip(json, pos[0]);
+        if (pos[0] >= json.length()) throw new IllegalArgumentException("Invalid JSON: unexpected end");
+        return json.charAt(pos[0]);
+    }
+
+    private static void expect(String json, int[] pos, char c) {
+        if (peek(json, pos) != c) throw new IllegalArgumentException("Invalid JSON: expected '" + c + "'");
+        pos[0]++;
+    }
+
+    private static String parseString(String json, int[] pos) {
+        expect(json, pos, '"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            if (pos[0] >= json.length()) throw new IllegalArgumentException("Invalid JSON: unterminated string");
+            char c = json.charAt(pos[0]++);
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (pos[0] >= json.length()) throw new IllegalArgumentException("Invalid JSON: unterminated string");
+            char escape = json.charAt(pos[0]++);
+            switch (escape) {
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    if (pos[0] + 4 > json.length()) throw new IllegalArgumentException("Invalid JSON: bad escape");
+                    value.append((char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16));
+                    pos[0] += 4;
+                    break;
+                default: value.append(escape);
+            }
+        }
+    }
+
+    /**
+     * @param s the text.
+     * @return the text as a JSON string literal.
+     */
+    static String quote(String s) {
+        StringBuilder quoted = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, "application/json; charset=utf-8", body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Serves the API over the accounts and {@code pfm_data} of the working directory
+     * until the process is stopped.
+     * @param args optionally the port.
+     */
+    public static void main(String[] args) {
+        int port = Integer.getInteger("pfm.api.port", 8080);
+        if (args.length > 0) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid port: " + args[0]);
+                return;
+            }
+        }
+        try {
+            ApiServer server = new ApiServer(port, new AccountDAO());
+            server.start();
+            System.out.println("Serving http://localhost:" + server.getPort() + "/api/");
+        } catch (IOException e) {
+            System.err.println("Could not start server: " + e.getMessage());
+        }
+    }
+}
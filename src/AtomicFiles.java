@@ -0,0 +1,140 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Crash-safe replacement of files. The new content is copied with
+ * {@link FileChannel#transferTo}, which lets the kernel move the bytes without passing
+ * them through the Java heap, into a {@code .tmp} file next to the target. It is then
+ * flushed to disk and renamed over the target, and the rename is flushed by syncing
+ * the directory. Readers see either the old file or the new one, never a partial one,
+ * and a crash leaves at worst a stray {@code .tmp} file.
+ *
+ * <p>Files that can be rebuilt, like the derived files of a year, are replaced with
+ * {@link #write} instead, which skips the syncs.</p>
+ *
+ * <p>Callers must not replace the same target concurrently; year files are replaced
+ * under the {@link UserLocks} write lock of their user.</p>
+ *
+ * <p>Instances of this class are not allowed.</p>
+ */
+public final class AtomicFiles {
+
+    /** Suffix of the file a replacement is staged in. */
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private AtomicFiles() {}
+
+    /**
+     * Defers the directory syncs of many replacements, e.g. a batch import, to one pass
+     * when the group is closed, so each directory is synced once. Every new file is
+     * still synced before it is renamed over its target, so the target always holds
+     * either all of its old content or all of the new. Until the group is closed,
+     * though, a crash may undo renames: a replaced file can come back with its old
+     * content, and a newly created one can disappear.
+     */
+    public static final class SyncGroup implements Closeable {
+        private final Set<Path> directories = new LinkedHashSet<>();
+        private int pending;
+
+        private synchronized void add(Path file) {
+            pending++;
+            directories.add(file.getParent());
+        }
+
+        /** @return the number of replacements whose rename is not yet synced. */
+        public synchronized int pending() {
+            return pending;
+        }
+
+        /** Syncs the directories of every replacement in the group so far. */
+        @Override
+        public synchronized void close() {
+            for (Path directory : directories) syncDirectory(directory);
+            directories.clear();
+            pending = 0;
+        }
+    }
+
+    /**
+     * Replaces a file with a copy of another.
+     * @param source the file to copy.
+     * @param target the file to replace or create.
+     * @param group the group to defer the directory sync to, or null to sync before returning.
+     * @throws IOException if the copy fails; the target is then unchanged.
+     */
+    public static void copy(Path source, Path target, SyncGroup group) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + TEMP_SUFFIX);
+        try {
+            try (FileChannel in = IOAccounting.openChannel(source, StandardOpenOption.READ);
+                 FileChannel out = IOAccounting.openChannel(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) position += IOAccounting.transfer(in, position, size - position, out);
+                // Even in a group: an unsynced file renamed over the target could leave
+                // neither the old nor the new content after a crash
+                IOAccounting.force(out, true);
+            }
+            IOAccounting.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            IOAccounting.deleteIfExists(temp);
+            throw e;
+        }
+
+        if (group == null) {
+            syncDirectory(absolute.getParent());
+        } else {
+            group.add(absolute);
+        }
+    }
+
+    /**
+     * Replaces a file with new content through a uniquely named {@code .tmp} file, so
+     * that neither readers, including ones that still have the old file mapped, nor
+     * concurrent writers of the same target ever see it partly written. Nothing is
+     * synced: a crash may lose the new content, so use this only for files that are
+     * checked and rebuilt when missing or stale.
+     * @param target the file to replace or create.
+     * @param content the new content, from its position to its limit.
+     * @throws IOException if the file cannot be written; the target is then unchanged.
+     */
+    public static void write(Path target, ByteBuffer content) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX);
+        try {
+            try (FileChannel out = IOAccounting.openChannel(temp, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                while (content.hasRemaining()) IOAccounting.write(out, content);
+            }
+            IOAccounting.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            IOAccounting.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Flushes a directory's entries, e.g. a rename, to disk.
+     * @param directory the directory.
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = IOAccounting.openChannel(directory, StandardOpenOption.READ)) {
+            IOAccounting.force(channel, true);
+        } catch (IOException e) {
+            // Directories cannot be opened on every platform; the rename is atomic regardless
+        }
+    }
+}
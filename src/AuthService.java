@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Registers and logs in users against an {@link AccountDAO}, hashing their passwords
+ * with a {@link PasswordHasher}.
+ */
+class AuthService {
+    private final AccountDAO accountDAO;
+    private final PasswordHasher hasher;
+
+    public AuthService(AccountDAO accountDAO) {
+        this(accountDAO, PasswordHasher.shared());
+    }
+
+    public AuthService(AccountDAO accountDAO, PasswordHasher hasher) {
+        this.accountDAO = accountDAO;
+        this.hasher = hasher;
+    }
+
+    /**
+     * @return false if the username is invalid or taken
+     * @throws IOException if the new account cannot be saved
+     */
+    public boolean register(String username, String password , String secretQuestion, String secretAnswer)
+            throws IOException {
+        long start = System.nanoTime();
+        boolean registered = false;
+        try {
+            registered = createAccount(username, password, secretQuestion, secretAnswer);
+            return registered;
+        } finally {
+            Metrics.shared().record("auth.register", start, registered);
+        }
+    }
+
+    private boolean createAccount(String username, String password , String secretQuestion, String secretAnswer)
+            throws IOException {
+        
+        if (!username.matches("^[a-zA-Z0-9_-]{3,20}$")) { // added if statement to fix KAN-4 bug - Arian
+            System.out.println("Username must be 3-20 characters long and can only contain letters, numbers, underscores, or hyphens.");
+            return false;
+        }
+        if (accountDAO.getAccountByUsername(username) != null) {
+            System.out.println("Username already exists.");   // added the println statement - Arian
+            return false; // Username already exists
+        }
+            
+        String id = UUID.randomUUID().toString(); // updated to accept question/answer- Arian
+        Account account = new Account(id, username, hasher.hashAsync(password).join(), secretQuestion, secretAnswer);
+        // Another registration may have taken the name while the password was hashed
+        if (!accountDAO.createAccountIfAbsent(account)) {
+            System.out.println("Username already exists.");
+            return false;
+        }
+        return true;
+    }
+
+    public Account login(String username, String password) {
+        return loginAsync(username, password).join();
+    }
+
+    /**
+     * Verifies a login on the password hashing pool. Accounts still stored with a
+     * plaintext or weaker password are re-hashed after a successful login.
+     * @return a future completing with the account, or null if the login failed
+     */
+    public CompletableFuture<Account> loginAsync(String username, String password) {
+        long start = System.nanoTime();
+        return verifyLogin(username, password).whenComplete((account, error) ->
+                Metrics.shared().record("auth.login", start, account != null));
+    }
+
+    private CompletableFuture<Account> verifyLogin(String username, String password) {
+        Account account = accountDAO.getAccountByUsername(username);
+        if (account == null || password == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String stored = account.getPassword();
+        return hasher.verifyAsync(password, stored).thenCompose(valid -> {
+            if (!valid) return CompletableFuture.completedFuture(null);
+            if (!hasher.needsRehash(stored)) return CompletableFuture.completedFuture(account);
+            return hasher.hashAsync(password).thenApply(hash -> {
+                // Keep a password changed by another session while this one was hashing
+                if (account.compareAndSetPassword(stored, hash)) accountDAO.updateAccount(account);
+                return account;
+            });
+        });
+    }
+
+    /**
+     * @return true if the password matches the one stored for the account
+     */
+    public boolean verifyPassword(Account account, String password) {
+        return account != null && hasher.verifyAsync(password, account.getPassword()).join();
+    }
+
+    /**
+     * Hashes and saves a new password for the account.
+     */
+    public void changePassword(Account account, String newPassword) {
+        account.setPassword(hasher.hashAsync(newPassword).join());
+        accountDAO.updateAccount(account);
+    }
+
+    public boolean isAuthenticated(Account account) {
+        return account != null;
+    }
+
+    /**
+     * Checks the answer to the account's secret question. Passwords are stored hashed
+     * and cannot be shown, so on success the caller should let the user pick a new one
+     * with {@link #changePassword(Account, String)}.
+     */
+    public boolean recoverPassword(String username, String answer) {
+        Account account = accountDAO.getAccountByUsername(username);
+        if (account != null) {
+            System.out.println("Secret Question: " + account.getSecretQuestion());
+            if (answer.equalsIgnoreCase(account.getSecretAnswer())) {
+                System.out.println("Answer accepted. You can now set a new password.");
+                return true;
+            } else {
+                System.out.println("Incorrect answer.");
+            }
+        } else {
+            System.out.println("Username not found.");
+        }
+        return false;
+    }
+
+}
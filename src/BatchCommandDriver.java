@@ -0,0 +1,338 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Non-interactive driver for the operations of the main menu, for scripts and bulk
+ * imports. Commands are read one per line from a file, standard input or the command
+ * line; blank lines and lines starting with {@code #} are ignored.
+ *
+ * <pre>
+ * login &lt;username&gt; &lt;password&gt;
+ * upload &lt;path/YYYY.csv&gt; [overwrite] [accept-invalid]
+ * list
+ * view &lt;year&gt;
+ * delete &lt;year&gt;
+ * report &lt;year&gt; [console|csv|json|save]
+ * predict &lt;year&gt; [&lt;category&gt; &lt;amount&gt; [&lt;priority&gt;...]]
+ * </pre>
+ *
+ * <p>Every command after a {@code login} runs as that user. Each user logs in once,
+ * however often the script switches back to them, and all logins are verified
+ * together on the password hashing pool. The commands of one user run in script
+ * order; different users run concurrently, one task per user on a fork-join pool.
+ * Output is buffered per user and printed in the order the users first log in.</p>
+ *
+ * <p>Uploads never prompt: an existing year is only replaced with {@code overwrite},
+ * and a file with invalid records is only kept with {@code accept-invalid}. Each
+ * upload is synced to disk before it replaces its year; the user's directory, which
+ * makes the replacements themselves durable, is synced once after their last command.
+ * The number of users processed at once defaults to the number of cores and can be
+ * set with the {@code pfm.batch.parallelism} system property.</p>
+ */
+public final class BatchCommandDriver {
+
+    /** Commands whose file I/O is accounted separately; others share one name. */
+    private static final List<String> COMMANDS = List.of("upload", "list", "view", "delete", "report", "predict");
+
+    /**
+     * The commands of one login, in script order.
+     */
+    private static final class Session {
+        private final String username;
+        private final String password;
+        private final List<String[]> commands = new ArrayList<>();
+        private final StringBuilder output = new StringBuilder();
+        private CompletableFuture<Account> login;
+        private int failures;
+
+        Session(String username, String password) {
+            this.username = username;
+            this.password = password;
+        }
+
+        void fail(String message) {
+            output.append("Error: ").append(message).append('\n');
+            failures++;
+        }
+    }
+
+    private final AuthService authService;
+
+    /**
+     * Constructs a driver over the accounts of the working directory.
+     */
+    public BatchCommandDriver() {
+        this(new AccountDAO());
+    }
+
+    /**
+     * Constructs a driver over the given accounts.
+     * @param accountDAO the accounts to log in with.
+     */
+    public BatchCommandDriver(AccountDAO accountDAO) {
+        this.authService = new AuthService(accountDAO);
+    }
+
+    /**
+     * Runs a script.
+     * @param script the commands, one per line.
+     * @param out where the output of every user is printed.
+     * @param parallelism the maximum number of users processed at once.
+     * @return the number of commands that failed.
+     * @throws IOException if the script cannot be read.
+     */
+    public int run(Reader script, Appendable out, int parallelism) throws IOException {
+        List<Session> sessions = new ArrayList<>();
+        int failures = parse(new BufferedReader(script), sessions, out);
+
+        // Verify every password up front; hashing is the slow part of a login
+        for (Session session : sessions) session.login = authService.loginAsync(session.username, session.password);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>(sessions.size());
+            for (Session session : sessions) futures.add(pool.submit(() -> execute(session)));
+            for (int i = 0; i < sessions.size(); i++) {
+                Session session = sessions.get(i);
+                try {
+                    futures.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Batch interrupted", e);
+                } catch (ExecutionException e) {
+                    session.fail("user " + session.username + " aborted: " + e.getCause());
+                }
+                out.append(session.output);
+                failures += session.failures;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return failures;
+    }
+
+    /**
+     * Splits a script into sessions, merging repeated logins of the same user.
+     * @return the number of lines that were rejected.
+     */
+    private static int parse(BufferedReader script, List<Session> sessions, Appendable out) throws IOException {
+        Map<String, Session> byLogin = new LinkedHashMap<>();
+        Session current = null;
+        int failures = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = script.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] words = line.split("\\s+");
+            if (words[0].equals("login")) {
+                if (words.length != 3) {
+                    out.append("Error: line " + lineNumber + ": usage: login <username> <password>\n");
+                    failures++;
+                    current = null;
+                    continue;
+                }
+                current = byLogin.computeIfAbsent(words[1] + '\n' + words[2], key -> {
+                    Session session = new Session(words[1], words[2]);
+                    sessions.add(session);
+                    return session;
+                });
+            } else if (current == null) {
+                out.append("Error: line " + lineNumber + ": not logged in: " + line + "\n");
+                failures++;
+            } else {
+                current.commands.add(words);
+            }
+        }
+        return failures;
+    }
+
+    @SuppressWarnings("try")
+    private void execute(Session session) {
+        StringBuilder out = session.output;
+        Account account = session.login.join();
+        if (account == null) {
+            out.append("== ").append(session.username).append('\n');
+            session.fail("invalid username or password; skipped " + session.commands.size() + " commands");
+            return;
+        }
+        Budget budget = new Budget(account);
+        // The renames of a session's uploads are synced to disk together once it ends
+        AtomicFiles.SyncGroup group = new AtomicFiles.SyncGroup();
+        try {
+            for (String[] command : session.commands) {
+                out.append(session.username).append("> ").append(String.join(" ", command)).append('\n');
+                String operation = "batch." + (COMMANDS.contains(command[0]) ? command[0] : "unknown");
+                try (IOAccounting.Scope io = IOAccounting.begin(operation)) {
+                    if (!execute(budget, group, command, out)) {
+                        session.fail("unknown command or wrong arguments: " + command[0]);
+                    }
+                } catch (NumberFormatException e) {
+                    session.fail("invalid number: " + e.getMessage());
+                } catch (IOException | IllegalArgumentException e) {
+                    session.fail(e.getMessage());
+                } catch (RuntimeException e) {
+                    // A failing command must not cost the user the rest of the script
+                    session.fail("unexpected error: " + e);
+                }
+            }
+        } finally {
+            group.close();
+        }
+    }
+
+    /**
+     * Runs one command of a logged in user.
+     * @return false if the command or its number of arguments is unknown.
+     */
+    private static boolean execute(Budget budget, AtomicFiles.SyncGroup group, String[] command, StringBuilder out)
+            throws IOException {
+        switch (command[0]) {
+            case "upload": {
+                if (command.length < 2) return false;
+                List<String> flags = Arrays.asList(command).subList(2, command.length);
+                for (String flag : flags) {
+                    if (!flag.equals("overwrite") && !flag.equals("accept-invalid")) return false;
+                }
+                boolean saved = budget.saveYear(command[1],
+                        () -> flags.contains("accept-invalid"), () -> flags.contains("overwrite"), group);
+                out.append(saved ? "=> Success.\n" : "No changes have been made.\n");
+                return true;
+            }
+            case "list": {
+                if (command.length != 1) return false;
+                List<Integer> years = budget.getYears();
+                if (years.isEmpty()) out.append("No budgets found.\n");
+                for (int year : years) out.append("- ").append(year).append('\n');
+                return true;
+            }
+            case "view": {
+                if (command.length != 2) return false;
+                TransactionTable.Cursor tr = budget.readYear(Integer.parseInt(command[1])).cursor();
+                while (tr.next()) {
+                    out.append(String.format("%02d/%02d/%04d, %s, %d%n", tr.getMonth(), tr.getDay(), tr.getYear(),
+                            tr.getCategory(), tr.getAmount()));
+                }
+                return true;
+            }
+            case "delete": {
+                if (command.length != 2) return false;
+                int year = Integer.parseInt(command[1]);
+                budget.deleteYear(year);
+                out.append("Successfully deleted: ").append(year).append(".csv\n");
+                return true;
+            }
+            case "report":
+                if (command.length != 2 && command.length != 3) return false;
+                return report(budget, Integer.parseInt(command[1]), command.length == 3 ? command[2] : "console", out);
+            case "predict":
+                if (command.length != 2 && (command.length < 4 || command.length > 7)) return false;
+                predict(budget, command, out);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean report(Budget budget, int year, String format, StringBuilder out) throws IOException {
+        File userDirectory = budget.getUserDataDir();
+        File csv = new File(userDirectory, year + ".csv");
+        if (format.equals("save")) {
+            if (!ReportsManager.generateReport(userDirectory, year)) {
+                throw new IllegalArgumentException("No valid data found for year " + year);
+            }
+            out.append("Saved Report").append(year).append(".csv\n");
+            return true;
+        }
+        if (!csv.isFile()) throw new IllegalArgumentException("No data found for year " + year);
+        YearCube cube = ParsedYearCache.shared().cube(csv, year);
+        if (!cube.isValid()) throw new IllegalArgumentException("Invalid file for year " + year);
+        switch (format) {
+            case "console": new ReportWriter.Console(out, ReportWriter.Console.widthFor(cube.totalIncome())).write(cube); break;
+            case "csv": new ReportWriter.Csv(out).write(cube); break;
+            case "json": new ReportWriter.JsonLines(out).write(cube); break;
+            default: return false;
+        }
+        return true;
+    }
+
+    private static void predict(Budget budget, String[] command, StringBuilder out) throws IOException {
+        File csv = new File(budget.getUserDataDir(), Integer.parseInt(command[1]) + ".csv");
+        if (!csv.isFile()) throw new IllegalArgumentException("No data found for year " + command[1]);
+        PredictionManager pd = new PredictionManager(csv.getPath());
+
+        String status = pd.determineBudgetStatus();
+        out.append("Current Budget Status: ").append(status).append('\n');
+        if (status.equals("surplus")) {
+            out.append("You can spend an additional: $").append(pd.determinePossibleAdditionalSpending("Any")).append('\n');
+        } else if (status.equals("deficit")) {
+            out.append("You need to cut expenses by: $").append(pd.determineDecreaseForSurplus()).append('\n');
+        }
+        if (command.length == 2) return;
+
+        String category = command[2];
+        if (!pd.hasCategory(category)) throw new IllegalArgumentException("Invalid category: " + category);
+        String[] priorities = Arrays.copyOfRange(command, 4, command.length);
+        for (String priority : priorities) {
+            if (!pd.hasCategory(priority)) throw new IllegalArgumentException("Invalid category: " + priority);
+        }
+        ScenarioEngine.Scenario scenario = new ScenarioEngine.Scenario(priorities, category, Integer.parseInt(command[3]));
+        ScenarioEngine.Result result = new ScenarioEngine(pd).evaluate(List.of(scenario)).get(0);
+        out.append(String.format("Annual Savings: $%d | 2 Years: $%d | 5 Years: $%d%n",
+                result.getSavings(1), result.getSavings(2), result.getSavings(5)));
+        if (result.getRemaining() > 0) {
+            out.append("Left to adjust in another category: $").append(result.getRemaining()).append('\n');
+        }
+    }
+
+    /**
+     * Runs a script from a file, standard input or the command line.
+     * @param args a script file, {@code -} for standard input, or {@code -e} followed by
+     *        one command per argument.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || (args[0].equals("-e") && args.length < 2)) {
+            System.err.println("Usage: BatchCommandDriver <script file> | - | -e <command>...");
+            return;
+        }
+        int parallelism = Integer.getInteger("pfm.batch.parallelism", Runtime.getRuntime().availableProcessors());
+        if (parallelism < 1) {
+            System.err.println("Parallelism must be at least 1");
+            return;
+        }
+
+        int failures;
+        try (Reader script = args[0].equals("-e")
+                ? new StringReader(String.join("\n", Arrays.copyOfRange(args, 1, args.length)))
+                : args[0].equals("-")
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : new FileReader(args[0], StandardCharsets.UTF_8)) {
+            failures = new BatchCommandDriver().run(script, System.out, parallelism);
+        } catch (IOException e) {
+            System.err.println("Batch failed: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (failures > 0) {
+            System.err.println(failures + " command(s) failed");
+            System.exit(1);
+        }
+    }
+}
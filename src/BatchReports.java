@@ -0,0 +1,147 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Month-end batch mode of {@link ReportsManager}: walks every {@code pfm_data/<user>}
+ * directory and writes the {@code Report<year>.csv} of each {@code <year>.csv} found,
+ * one task per user-year on a fork-join pool, then prints a summary with timings.
+ *
+ * <p>The number of worker threads defaults to the number of cores and can be set with
+ * the {@code pfm.reports.parallelism} system property or on the command line.</p>
+ *
+ * <p>Instances of this class are not allowed.</p>
+ */
+public final class BatchReports {
+
+    /**
+     * Outcome of one user-year report.
+     */
+    public static final class Task {
+        private final String username;
+        private final int year;
+        private boolean written;
+        private String error;
+        private long nanos;
+
+        private Task(String username, int year) {
+            this.username = username;
+            this.year = year;
+        }
+
+        /** @return the user the report belongs to. */
+        public String getUsername() { return username; }
+        /** @return the year of the report. */
+        public int getYear() { return year; }
+        /** @return true if the report file was written. */
+        public boolean isWritten() { return written; }
+        /** @return why the report was not written, or null. */
+        public String getError() { return error; }
+        /** @return how long the report took, in nanoseconds. */
+        public long getNanos() { return nanos; }
+    }
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private BatchReports() {}
+
+    /**
+     * Generates the reports of every user-year under a data directory.
+     * @param dataDirectory the {@code pfm_data} directory.
+     * @param parallelism the maximum number of reports generated at once.
+     * @return the outcome of every report, in directory order.
+     */
+    public static List<Task> run(File dataDirectory, int parallelism) {
+        List<Task> tasks = new ArrayList<>();
+        File[] users = dataDirectory.listFiles(File::isDirectory);
+        if (users == null) return tasks;
+        for (File user : users) {
+            File[] years = user.listFiles((dir, name) -> name.matches("\\d{4}\\.csv"));
+            if (years == null) continue;
+            for (File year : years) {
+                tasks.add(new Task(user.getName(), Integer.parseInt(year.getName().substring(0, 4))));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                futures.add(pool.submit(() -> generate(new File(dataDirectory, task.username), task)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    // generate() records its own failures
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return tasks;
+    }
+
+    private static void generate(File userDirectory, Task task) {
+        long start = System.nanoTime();
+        try {
+            task.written = ReportsManager.generateReport(userDirectory, task.year);
+            if (!task.written) task.error = "invalid records";
+        } catch (IOException | RuntimeException e) {
+            task.error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        task.nanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Runs the batch over {@code pfm_data} in the working directory.
+     * @param args optionally the parallelism limit.
+     */
+    public static void main(String[] args) {
+        int parallelism = Integer.getInteger("pfm.reports.parallelism", Runtime.getRuntime().availableProcessors());
+        if (args.length > 0) {
+            try {
+                parallelism = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid parallelism: " + args[0]);
+                return;
+            }
+        }
+        if (parallelism < 1) {
+            System.err.println("Parallelism must be at least 1");
+            return;
+        }
+
+        File dataDirectory = new File(System.getProperty("user.dir"), "pfm_data");
+        long start = System.nanoTime();
+        List<Task> tasks = run(dataDirectory, parallelism);
+        long wall = System.nanoTime() - start;
+
+        int written = 0;
+        long busy = 0;
+        long slowest = 0;
+        for (Task task : tasks) {
+            busy += task.nanos;
+            slowest = Math.max(slowest, task.nanos);
+            if (task.written) {
+                written++;
+            } else {
+                System.err.println("Skipped " + task.username + "/" + task.year + ": " + task.error);
+            }
+        }
+        System.out.printf("Generated %d of %d reports with parallelism %d in %.1f ms%n",
+                written, tasks.size(), parallelism, wall / 1e6);
+        if (!tasks.isEmpty()) {
+            System.out.printf("Per report: %.2f ms average, %.2f ms slowest; speedup %.2fx%n",
+                    busy / 1e6 / tasks.size(), slowest / 1e6, wall > 0 ? (double) busy / wall : 0.0);
+        }
+    }
+}
@@ -1,12 +1,12 @@
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BooleanSupplier;
 
 
 /**
@@ -24,7 +24,7 @@ public class Budget {
      * @author Shaeem Rockcliffe
      * @version %I%, %G%
      */
-    public class Transaction {
+    public static class Transaction {
         private int month;
         private int day;
         private int year;
@@ -50,6 +50,22 @@ public class Budget {
             this.category = category;
             this.amount = amount;
         }
+
+        /**
+         * Constructs a {@code Transaction} object from an already parsed date.
+         * @param month the month (1-12) of the transaction.
+         * @param day the day (1-31) of the transaction.
+         * @param year the year of the transaction.
+         * @param category the category of the transaction.
+         * @param amount the amount in dollars.
+         */
+        public Transaction(int month, int day, int year, String category, long amount) {
+            this.month = month;
+            this.day = day;
+            this.year = year;
+            this.category = category;
+            this.amount = amount;
+        }
         /** Returns the month the transaction took place.
          * @return the month (1-12) of the transaction.
          */
@@ -133,14 +149,15 @@ public class Budget {
      * Constructs a Budget instance for a specific account
      * @param account is the account that will be associated with this budget
      * instance. A valid account needs to be passed in order to create a budget
-     * instance.
+     * instance. If the account's directory cannot be created, every method that
+     * needs it fails: the prompting ones exit, the others throw an IOException.
      */
     public Budget(Account account) {
         String dir = System.getProperty("user.dir");
         userDataDir = dir + "/pfm_data/" + account.getUsername();
         var file = new File(userDataDir);
-        if (!file.exists() && !file.mkdirs()) {
-            panic("Failed to create directory for user %s.", account.getUsername());
+        if (!IOAccounting.exists(file) && !IOAccounting.mkdirs(file)) {
+            System.err.println("Failed to create directory for user " + account.getUsername() + ".");
         }
     }
 
@@ -150,88 +167,170 @@ public class Budget {
      * Upon expected failures (file does not exist, invalid name, etc.)
      * prints error and returns. Prints error and exits if unexpected I/O error occurs. 
      */
+    @SuppressWarnings("try")
     public void promptToCreateOrUpdate() {
+        long start = System.nanoTime();
+        boolean succeeded = false;
         verifyUserDataDir();
 
         String inputFilePath = getString("CSV file: ");
 
+        try (IOAccounting.Scope io = IOAccounting.begin("budget.promptToCreateOrUpdate")) {
+            boolean saved = saveYear(inputFilePath, this::confirmInvalidRecords, () -> {
+                // Prompt the user to overwrite if the file exists
+                String userResponse = getString("CSV data for year already exists. Overwrite it (y/n): ");
+                if (!userResponse.equalsIgnoreCase("y") && !userResponse.equalsIgnoreCase("yes")) {
+                    System.out.println("No changes have been made.");
+                    return false;
+                }
+                return true;
+            });
+            if (saved) System.out.println("=> Success.");
+            succeeded = true;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (IOException e) {
+            panic("Unexpected I/O error when saving file: %s.", e.getMessage());
+        } finally {
+            Metrics.shared().record("budget.promptToCreateOrUpdate", start, succeeded);
+        }
+    }
+
+    /**
+     * Saves a {@code YYYY.csv} file as this user's data for year YYYY, without prompting.
+     * The confirmations are only asked when data for the year already exists, in order:
+     * first whether to keep a file with invalid records (only if it has any), then
+     * whether to overwrite. They are asked before taking the user's write lock, so a
+     * slow answer does not hold up other operations of the user; if the year's file
+     * was created, replaced or deleted meanwhile, they are asked again.
+     * @param inputFilePath the file to save; its name must be {@code YYYY.csv}.
+     * @param acceptInvalid asked whether to save a file with invalid records.
+     * @param overwrite asked whether to replace the existing data of the year.
+     * @return true if the file was saved, false if a confirmation was declined.
+     * @throws IllegalArgumentException if the file is missing or not named {@code YYYY.csv}.
+     * @throws IOException if the file cannot be read or saved.
+     */
+    public boolean saveYear(String inputFilePath, BooleanSupplier acceptInvalid, BooleanSupplier overwrite)
+            throws IOException {
+        return saveYear(inputFilePath, acceptInvalid, overwrite, null);
+    }
+
+    /**
+     * Saves a {@code YYYY.csv} file like {@link #saveYear(String, BooleanSupplier, BooleanSupplier)},
+     * deferring the directory sync of the new year file to a group, e.g. for a batch import.
+     * @param inputFilePath the file to save; its name must be {@code YYYY.csv}.
+     * @param acceptInvalid asked whether to save a file with invalid records.
+     * @param overwrite asked whether to replace the existing data of the year.
+     * @param group the group to defer the directory sync to, or null to sync before returning.
+     * @return true if the file was saved, false if a confirmation was declined.
+     * @throws IllegalArgumentException if the file is missing or not named {@code YYYY.csv}.
+     * @throws IOException if the file cannot be read or saved.
+     */
+    public boolean saveYear(String inputFilePath, BooleanSupplier acceptInvalid, BooleanSupplier overwrite,
+                            AtomicFiles.SyncGroup group) throws IOException {
+        checkUserDataDir();
+
         if (inputFilePath.length() < 8) {
-            System.err.println("Invalid CSV file. Must be YYYY.csv");
-            return;
+            throw new IllegalArgumentException("Invalid CSV file. Must be YYYY.csv");
         }
 
         String basename = inputFilePath.substring(inputFilePath.length() - 8);
 
         if (!basename.matches("[1-9]\\d{3}\\.csv")) {
-            System.err.println("Invalid CSV file. Must be YYYY.csv.");
-            return;
+            throw new IllegalArgumentException("Invalid CSV file. Must be YYYY.csv.");
         }
 
         var inputFile = new File(inputFilePath);
-        if (!inputFile.exists()) {
-            System.err.println("Cannot find file " + inputFilePath);
-            return;
-        } else if (inputFile.isDirectory()) {
-            System.err.println("Cannot read a directory as a CSV file.");
-            return;
+        if (!IOAccounting.exists(inputFile)) {
+            throw new IllegalArgumentException("Cannot find file " + inputFilePath);
+        } else if (IOAccounting.isDirectory(inputFile)) {
+            throw new IllegalArgumentException("Cannot read a directory as a CSV file.");
         }
 
         int userYear = Integer.parseInt(basename.substring(0, 4)); // should never throw
 
-        // Validate the year input
-        if (userYear < 1000 || userYear > 9999) {
-            System.out.println("Invalid year. Please provide a valid year.\n");
-            return;
-        }
-    
-    
         String savedFilePath = userDataDir + "/" + userYear + ".csv";
         File savedFile = new File(savedFilePath);
-    
-        // Check if the file exists, if not, create it
-        if (!savedFile.exists()) {
+
+        // Validate and parse the upload once; the parsed rows become the columnar copy. Its
+        // categories are staged and only added to the store once the upload is confirmed
+        CategoryDictionary categories = CategoryDictionary.forDirectory(new File(userDataDir)).stage();
+        TransactionTable.Builder upload = new TransactionTable.Builder(categories);
+        YearFileParser.Result result;
+        try {
+            result = YearFileParser.parse(inputFilePath, userYear, false, categories, upload,
+                    YearFileParser.defaultParallelism());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Error reading file: " + e.getMessage(), e);
+        }
+
+        Lock lock = UserLocks.shared().forDirectory(new File(userDataDir)).writeLock();
+        while (true) {
+            // The answers only hold for the file they were given about
+            long[] asked = stamp(savedFile);
+            if (asked != null && !confirmReplace(savedFile, result, acceptInvalid, overwrite)) return false;
+            lock.lock();
             try {
-                if (!savedFile.createNewFile()) {
-                    System.err.println("Error: Could not create the file.");
-                    return;
+                if (Arrays.equals(stamp(savedFile), asked)) {
+                    writeYear(inputFilePath, savedFile, userYear, upload.build(), result, group);
+                    break;
                 }
-            } catch (IOException e) {
-                System.err.println("Error creating file: " + e.getMessage());
-                return;
-            }
-        } else {
-            // If the file exists, check if it's a directory
-            if (savedFile.isDirectory()) {
-                System.err.println("Error: A directory with this name already exists.");
-                return;
+            } finally {
+                lock.unlock();
             }
+        }
+        refreshForecast();
+        return true;
+    }
 
-            if (!verifyFileContent(inputFilePath, userYear)) return;
+    /**
+     * @return the length and modification time of a file, or null if it does not exist.
+     */
+    private static long[] stamp(File file) {
+        if (!IOAccounting.exists(file)) return null;
+        return new long[] { IOAccounting.length(file), IOAccounting.lastModified(file) };
+    }
 
-            // Prompt the user to overwrite if the file exists
-            String userResponse = getString("CSV data for year already exists. Overwrite it (y/n): ");
+    /**
+     * Asks whether to replace the existing data of a year.
+     * @return false if a confirmation was declined.
+     */
+    private static boolean confirmReplace(File savedFile, YearFileParser.Result result,
+                                          BooleanSupplier acceptInvalid, BooleanSupplier overwrite) {
+        // If the file exists, check if it's a directory
+        if (IOAccounting.isDirectory(savedFile)) {
+            throw new IllegalArgumentException("Error: A directory with this name already exists.");
+        }
 
-            if (!userResponse.equalsIgnoreCase("y") && !userResponse.equalsIgnoreCase("yes")) {
-                System.out.println("No changes have been made.");
-                return;
-            }
+        if (!result.isValid() && !acceptInvalid.getAsBoolean()) return false;
+        return overwrite.getAsBoolean();
+    }
+
+    /**
+     * Replaces a year file and its derived files; the caller holds the write lock.
+     */
+    private void writeYear(String inputFilePath, File savedFile, int userYear, TransactionTable table,
+                           YearFileParser.Result result, AtomicFiles.SyncGroup group) throws IOException {
+        CategoryDictionary store = CategoryDictionary.forDirectory(new File(userDataDir));
+        try {
+            table = table.withCategories(store.commit(table.getCategories()), store);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     
-        // Proceed with copying the file content
-        try (BufferedReader fileReader = new BufferedReader(new FileReader(inputFilePath));
-             BufferedWriter fileWriter = new BufferedWriter(new FileWriter(savedFilePath))) {
-    
-            String line;
-            while ((line = fileReader.readLine()) != null) {
-                fileWriter.write(line);
-                fileWriter.newLine();
-            }
+        // Copy into a temp file and rename it over the year, so a crash never truncates it
+        AtomicFiles.copy(new File(inputFilePath).toPath(), savedFile.toPath(), group);
+
+        // Only this year's derived files change; readers rebuild them from the CSV if missing
+        try {
+            ColumnarYearFile.write(savedFile, table, result.getInvalidRows());
+            YearCube.build(userYear, table, result.getInvalidRows()).write(savedFile);
         } catch (IOException e) {
-            panic("Unexpected I/O error when saving file: %s.", e.getMessage());
+            System.err.println("Could not save columnar copy of " + savedFile.getName() + ": " + e.getMessage());
         }
-
-        System.out.println("=> Success.");
+        ParsedYearCache.shared().put(savedFile, userYear, table, result.getInvalidRows());
     }
+
     /**
      * Prompts the user for the year number of the file to
      * delete. Upon expected failures (file does not exist, invalid name, etc.)
@@ -248,103 +347,145 @@ public class Budget {
         }
         
         int year = scanner.nextInt();
-        
+
+        try {
+            deleteYear(year);
+            System.out.println("Successfully deleted: " + year + ".csv");
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes this user's data for a year, without prompting.
+     * @param year the year to delete.
+     * @throws IllegalArgumentException if the year is invalid or has no data.
+     * @throws IOException if the file cannot be deleted.
+     */
+    public void deleteYear(int year) throws IOException {
+        checkUserDataDir();
+
         if (year < 1000 || year > 9999) {
-            System.err.println("Error: Year must be a 4-digit number.");
-            return;
+            throw new IllegalArgumentException("Error: Year must be a 4-digit number.");
         }
     
-        File fileToDelete = new File(userDataDir + "/" + year + ".csv");
+        Lock lock = UserLocks.shared().forDirectory(new File(userDataDir)).writeLock();
+        lock.lock();
+        try {
+            File fileToDelete = new File(userDataDir + "/" + year + ".csv");
     
-        if (!fileToDelete.exists()) {
-            System.err.println("Error: File does not exist for year " + year + ".");
-            return;
-        }
+            if (!IOAccounting.exists(fileToDelete)) {
+                throw new IllegalArgumentException("Error: File does not exist for year " + year + ".");
+            }
     
-        if (fileToDelete.isDirectory()) {
-            System.err.println("Error: Expected a file, but found a directory.");
-            return;
-        }
+            if (IOAccounting.isDirectory(fileToDelete)) {
+                throw new IllegalArgumentException("Error: Expected a file, but found a directory.");
+            }
     
-        if (!fileToDelete.delete()) {
-            System.err.println("Failed to delete file " + fileToDelete.getAbsolutePath());
-            return;
+            if (!IOAccounting.delete(fileToDelete)) {
+                throw new IOException("Failed to delete file " + fileToDelete.getAbsolutePath());
+            }
+
+            ParsedYearCache.shared().invalidate(fileToDelete);
+            for (File derived : new File[] { ColumnarYearFile.sidecarFor(fileToDelete), YearCube.cubeFor(fileToDelete) }) {
+                if (IOAccounting.exists(derived) && !IOAccounting.delete(derived)) {
+                    System.err.println("Failed to delete file " + derived.getAbsolutePath());
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     
-        System.out.println("Successfully deleted: " + fileToDelete.getName());
+        refreshForecast();
+    }
+
+    /**
+     * Brings the expense forecast of this user up to date with the year files.
+     */
+    private void refreshForecast() {
+        try {
+            ExpenseForecaster.refresh(new File(userDataDir));
+        } catch (IOException e) {
+            System.err.println("Could not update expense forecast: " + e.getMessage());
+        }
     }
     
     /**
-     * Reads a CSV file for a given year and returns a list of transactions, or null if
+     * Reads a CSV file for a given year and returns a table of transactions, or null if
      * the file for that year is missing, has the wrong type, or contains invalid data.
      * @param year the year to read.
-     * @return list of transactions from the file, or null.
+     * @return table of transactions from the file, or null.
+     */
+    @SuppressWarnings("try")
+    public TransactionTable readCSV(int year) {
+        long start = System.nanoTime();
+        TransactionTable table = null;
+        try (IOAccounting.Scope io = IOAccounting.begin("budget.readCSV")) {
+            table = readYear(year);
+            File file = new File(userDataDir + "/" + year + ".csv");
+            if (ParsedYearCache.shared().invalidRows(file, year) > 0 && !confirmInvalidRecords()) table = null;
+            return table;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return null;
+        } catch (IOException e) {
+            panic("Failed to read file '%s': %s", userDataDir + "/" + year + ".csv", e.getMessage());
+            return null; // unreachable
+        } finally {
+            Metrics.shared().record("budget.readCSV", start, table != null);
+        }
+    }
+
+    /**
+     * Reads the valid transactions of a year, without prompting about invalid ones.
+     * @param year the year to read.
+     * @return table of the valid transactions of the year.
+     * @throws IllegalArgumentException if the year has no data file.
+     * @throws IOException if the file cannot be read.
      */
-    public ArrayList<Transaction> readCSV(int year) {
-        verifyUserDataDir(); 
+    public TransactionTable readYear(int year) throws IOException {
+        checkUserDataDir();
     
         String filename = userDataDir + "/" + year + ".csv";
         File file = new File(filename);
     
-        if (!file.exists()) {
-            System.err.println("Error: File not found: " + filename);
-            return null;
-        }
-    
-        if (file.isDirectory()) {
-            System.err.println("Error: Expected a file but found a directory: " + filename);
-            return null;
+        if (!IOAccounting.exists(file)) {
+            throw new IllegalArgumentException("Error: File not found: " + filename);
         }
     
-        if (!verifyFileContent(filename, year)) return null;
-    
-        ArrayList<Transaction> transactions = new ArrayList<>();
-    
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-    
-                if (!ValidationManager.CheckCSVContent.validateLine(year, line)) {
-                    System.err.println("Skipping invalid line: " + line);
-                    continue;
-                }
-    
-                String[] parts = line.split(",");
-                String date = parts[0].trim();
-                String category = parts[1].trim();
-                long amount = Long.parseLong(parts[2].trim());
-    
-                transactions.add(new Transaction(date, category, amount));
-            }
-        } catch (IOException e) {
-            panic("Failed to read file '%s': %s", filename, e.getMessage());
-            // unreachable
+        if (IOAccounting.isDirectory(file)) {
+            throw new IllegalArgumentException("Error: Expected a file but found a directory: " + filename);
         }
     
-        return transactions;
+        return ParsedYearCache.shared().table(file, year);
     }
 
     /**
      * Returns a list of years (based on files present in the saved files
-     * directory), or null upon failure to read the data directory.
-     * @return list of years, or null
+     * directory).
+     * @return list of years
+     * @throws IOException if the data directory is missing or cannot be read.
      */
-    public ArrayList<Integer> getYears() {
-        verifyUserDataDir(); 
+    public ArrayList<Integer> getYears() throws IOException {
+        checkUserDataDir();
     
         ArrayList<Integer> years = new ArrayList<>();
         File directory = new File(userDataDir);
     
-        File[] files = directory.listFiles();
+        File[] files;
+        Lock lock = UserLocks.shared().forDirectory(directory).readLock();
+        lock.lock();
+        try {
+            files = IOAccounting.listFiles(directory);
+        } finally {
+            lock.unlock();
+        }
         if (files == null) {
-            System.err.println("Failed to fetch user data files");
-            return null;
+            throw new IOException("Failed to fetch user data files");
         }
     
         for (File file : files) {
-            if (file.isFile() && file.getName().endsWith(".csv")) {
+            if (IOAccounting.isFile(file) && file.getName().endsWith(".csv")) {
                 String filename = file.getName().replace(".csv", "");
                 try {
                     int year = Integer.parseInt(filename);
@@ -360,22 +501,42 @@ public class Budget {
         return years;
     }
 
+    /**
+     * @return the directory holding this user's year files.
+     */
+    public File getUserDataDir() {
+        return new File(userDataDir);
+    }
+
     private void panic(String msg, Object ...args) {
         System.err.println("Fatal error: " + String.format(msg, args));
         System.exit(1);
     }
 
     /**
-     * Whenever accessing the directory {@code userDataDir}, call this method first
-     * to ensure the directory is valid.
+     * Whenever accessing the directory {@code userDataDir} from a prompt, call this
+     * method first to ensure the directory is valid.
      */
     private void verifyUserDataDir() {
+        try {
+            checkUserDataDir();
+        } catch (IOException e) {
+            panic("%s", e.getMessage());
+        }
+    }
+
+    /**
+     * Like {@link #verifyUserDataDir()} for the methods that do not prompt, which
+     * must not exit the process.
+     * @throws IOException if the directory is missing or not a directory.
+     */
+    private void checkUserDataDir() throws IOException {
         var file = new File(userDataDir);
-        if (!file.exists()) {
-            panic("Internal storage is corrupt: Directory %s is missing.", userDataDir);
+        if (!IOAccounting.exists(file)) {
+            throw new IOException("Internal storage is corrupt: Directory " + userDataDir + " is missing.");
         }
-        if (!file.isDirectory()) {
-            panic("Internal storage is corrupt: %s is not a directory.", userDataDir);
+        if (!IOAccounting.isDirectory(file)) {
+            throw new IOException("Internal storage is corrupt: " + userDataDir + " is not a directory.");
         }
     }
 
@@ -390,16 +551,15 @@ public class Budget {
         return scanner.next();
     }
 
-    private boolean verifyFileContent(String filePath, int year) {
-        boolean isValid = ValidationManager.CheckCSVContent.validateWholeCSVFile(year, filePath);
-            
-        // If invalid, prompt the user
-        if (!isValid) {
-            String userResponse = getString("The CSV file contains invalid records. Continue anyway? (y/n): ");
-            if (!userResponse.equals("y") && !userResponse.equals("yes")) {
-                System.out.println("No changes have been made.");
-                return false;
-            }
+    /**
+     * Asks the user whether to keep going with a CSV file that contains invalid records.
+     * @return true if the user chose to continue.
+     */
+    private boolean confirmInvalidRecords() {
+        String userResponse = getString("The CSV file contains invalid records. Continue anyway? (y/n): ");
+        if (!userResponse.equals("y") && !userResponse.equals("yes")) {
+            System.out.println("No changes have been made.");
+            return false;
         }
         return true;
     }
@@ -0,0 +1,281 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent dictionary that gives every category of a data store (one
+ * {@code pfm_data/<user>} directory) a dense integer id. Ids are assigned in order of
+ * first appearance, never change, and are shared by all the years of the store, so
+ * per-category work can index arrays instead of comparing strings.
+ *
+ * <p>The dictionary is kept in {@code categories.txt}, one name per line in id order,
+ * and only ever appended to. Lookups are lock-free. Adding a category takes a lock on
+ * the file as well, so that several processes sharing a store agree on the ids: under
+ * it, the lines other processes appended since are read first, and a name is only
+ * appended, and given the next id, if it is still unknown. A category that cannot be
+ * saved gets no id.</p>
+ */
+public final class CategoryDictionary {
+
+    /** Name of the dictionary file inside a store directory. */
+    public static final String FILE_NAME = "categories.txt";
+
+    private static final ConcurrentHashMap<String, CategoryDictionary> STORES = new ConcurrentHashMap<>();
+
+    /**
+     * Immutable snapshot of the dictionary: names by id, plus an open-addressing hash
+     * table holding {@code id + 1} (0 marks an empty slot).
+     */
+    private static final class State {
+        final String[] names;
+        final int size;
+        final int[] slots;
+
+        State(String[] names, int size, int[] slots) {
+            this.names = names;
+            this.size = size;
+            this.slots = slots;
+        }
+    }
+
+    private final File file;
+    private volatile State state = new State(new String[16], 0, new int[32]);
+    private long loaded; // bytes of the file read into the state, guarded by this
+    private Object fileKey; // identity of that file where the platform has one, guarded by this
+
+    private CategoryDictionary(File file) {
+        this.file = file;
+        load();
+    }
+
+    /** Constructs an unsaved copy of a snapshot, see {@link #stage()}. */
+    private CategoryDictionary(State state) {
+        this.file = null;
+        this.state = state;
+    }
+
+    /**
+     * Returns the dictionary of a store directory, loading it on first use.
+     * @param directory the store directory.
+     * @return the shared dictionary instance for that directory.
+     */
+    public static CategoryDictionary forDirectory(File directory) {
+        File file = new File(directory, FILE_NAME);
+        return STORES.computeIfAbsent(file.getAbsolutePath(), path -> new CategoryDictionary(file));
+    }
+
+    /**
+     * Drops the dictionary of a store directory from the process, e.g. after the
+     * directory is deleted, so that a store created there later starts empty. Call it
+     * under the {@link UserLocks} write lock of the directory.
+     * @param directory the store directory.
+     */
+    public static void forget(File directory) {
+        STORES.remove(new File(directory, FILE_NAME).getAbsolutePath());
+    }
+
+    /**
+     * Returns an in-memory copy of this dictionary whose new categories are not saved,
+     * for parsing an upload that may still be declined. The copy's ids agree with this
+     * dictionary's for every category both know; see {@link #commit}.
+     * @return the staging copy.
+     */
+    public CategoryDictionary stage() {
+        return new CategoryDictionary(state);
+    }
+
+    /**
+     * Adds the categories of a staging copy to this dictionary.
+     * @param staged a copy made by {@link #stage()}.
+     * @return the id in this dictionary of each id of the copy.
+     * @throws UncheckedIOException if a new category cannot be saved.
+     */
+    public int[] commit(CategoryDictionary staged) {
+        State s = staged.state;
+        int[] ids = new int[s.size];
+        for (int id = 0; id < s.size; id++) ids[id] = intern(s.names[id]);
+        return ids;
+    }
+
+    /** @return the number of categories. */
+    public int size() {
+        return state.size;
+    }
+
+    /**
+     * Returns the name of a category id.
+     * @param id the category id.
+     * @return the category name.
+     */
+    public String name(int id) {
+        State s = state;
+        if (id < 0 || id >= s.size) throw new IndexOutOfBoundsException("Unknown category id " + id);
+        return s.names[id];
+    }
+
+    /**
+     * Looks up a category without adding it.
+     * @param name the category name.
+     * @return the id, or -1 if the category is unknown.
+     */
+    public int lookup(CharSequence name) {
+        return find(state, name, 0, name.length());
+    }
+
+    /**
+     * Returns the id of the category spelled by {@code chars[from, to)}, without allocating.
+     * @param chars the characters holding the name.
+     * @param from index of the first character.
+     * @param to index just past the last character.
+     * @return the id, or -1 if the category is unknown.
+     */
+    public int lookup(CharSequence chars, int from, int to) {
+        return find(state, chars, from, to);
+    }
+
+    /**
+     * Returns the id of a category, adding it if needed.
+     * @param name the category name.
+     * @return the id.
+     * @throws UncheckedIOException if a new category cannot be saved.
+     */
+    public int intern(CharSequence name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Returns the id of the category spelled by {@code chars[from, to)}, adding it if
+     * needed. Known categories are found without allocating.
+     * @param chars the characters holding the name.
+     * @param from index of the first character.
+     * @param to index just past the last character.
+     * @return the id.
+     * @throws UncheckedIOException if a new category cannot be saved.
+     */
+    public int intern(CharSequence chars, int from, int to) {
+        int id = find(state, chars, from, to);
+        return id >= 0 ? id : add(chars.subSequence(from, to).toString());
+    }
+
+    @SuppressWarnings("try")
+    private synchronized int add(String name) {
+        int id = find(state, name, 0, name.length());
+        if (id >= 0) return id;
+        if (file == null) return put(name); // staging copy
+
+        try (FileChannel channel = IOAccounting.openChannel(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            // Another process may have added categories, possibly this one, since we last read
+            readFrom(channel);
+            id = find(state, name, 0, name.length());
+            if (id >= 0) return id;
+
+            long end = channel.size();
+            ByteBuffer line = Charset.defaultCharset().encode(name + System.lineSeparator());
+            try {
+                channel.position(end);
+                while (line.hasRemaining()) IOAccounting.write(channel, line);
+            } catch (IOException e) {
+                channel.truncate(end); // never leave half a name behind
+                throw e;
+            }
+            loaded = channel.size();
+            return put(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not save category " + name, e);
+        }
+    }
+
+    /** Appends a name to a new snapshot and publishes it. Caller holds the lock. */
+    private int put(String name) {
+        State s = state;
+        int id = s.size;
+        String[] names = id < s.names.length ? s.names.clone() : Arrays.copyOf(s.names, id * 2);
+        names[id] = name;
+        int[] slots = (id + 1) * 2 > s.slots.length ? new int[s.slots.length * 2] : s.slots.clone();
+        if (slots.length != s.slots.length) {
+            for (int i = 0; i < id; i++) insert(slots, names[i], i);
+        }
+        insert(slots, name, id);
+        state = new State(names, id + 1, slots);
+        return id;
+    }
+
+    private static void insert(int[] slots, String name, int id) {
+        int mask = slots.length - 1;
+        int slot = hash(name, 0, name.length()) & mask;
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+        slots[slot] = id + 1;
+    }
+
+    private static int find(State s, CharSequence chars, int from, int to) {
+        int mask = s.slots.length - 1;
+        for (int slot = hash(chars, from, to) & mask; s.slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = s.slots[slot] - 1;
+            if (equals(s.names[id], chars, from, to)) return id;
+        }
+        return -1;
+    }
+
+    private static int hash(CharSequence chars, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31 * h + chars.charAt(i);
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(String name, CharSequence chars, int from, int to) {
+        if (name.length() != to - from) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars.charAt(from + i)) return false;
+        }
+        return true;
+    }
+
+    private synchronized void load() {
+        if (!IOAccounting.isFile(file)) return;
+        try (FileChannel channel = IOAccounting.openChannel(file.toPath(), StandardOpenOption.READ)) {
+            readFrom(channel);
+        } catch (IOException e) {
+            System.err.println("Could not load categories from " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the complete lines of the file past {@link #loaded}. A line still being
+     * appended by another process is left for the next read. A file that shrank or is
+     * another file than the one read so far was replaced, e.g. by deleting and creating
+     * the store again, and is read from the start. Caller holds the lock.
+     */
+    private void readFrom(FileChannel channel) throws IOException {
+        Object key = IOAccounting.fileKey(file);
+        long size = channel.size();
+        if (size < loaded || (fileKey != null && !fileKey.equals(key))) {
+            state = new State(new String[16], 0, new int[32]);
+            loaded = 0;
+        }
+        fileKey = key;
+        if (size <= loaded) return;
+        ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, size - loaded));
+        while (bytes.hasRemaining()) {
+            if (IOAccounting.read(channel, bytes, loaded + bytes.position()) < 0) break;
+        }
+        int complete = bytes.position();
+        while (complete > 0 && bytes.get(complete - 1) != '\n') complete--;
+        if (complete == 0) return;
+
+        String text = new String(bytes.array(), 0, complete, Charset.defaultCharset());
+        for (String line : text.split("\\r?\\n")) {
+            line = line.trim();
+            if (!line.isEmpty() && find(state, line, 0, line.length()) < 0) put(line);
+        }
+        loaded += complete;
+    }
+}
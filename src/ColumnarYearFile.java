@@ -0,0 +1,251 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary columnar copy of a {@code <year>.csv} file, stored next to it as
+ * {@code <year>.pfmc}. The CSV stays the interchange format; the sidecar holds the
+ * already validated rows as three packed columns (dates, category ids, amounts) so
+ * readers can scan them through a memory-mapped buffer without parsing any text.
+ * Category ids refer to the {@link CategoryDictionary} of the directory.
+ *
+ * <p>Layout (big endian):</p>
+ * <pre>
+ *   int  magic, int version
+ *   long length and long last-modified time of the CSV the sidecar was built from
+ *   long fingerprint of the CSV's first and last blocks, see {@link #fingerprint}
+ *   int  rows, int invalid rows, int dictionary size when written, int padding
+ *   int[rows]  dates packed as year * 10000 + month * 100 + day
+ *   int[rows]  category ids
+ *   long[rows] amounts in dollars
+ * </pre>
+ * A sidecar whose recorded length, modification time or fingerprint no longer matches
+ * its CSV, or that refers to categories its dictionary does not know, is stale and is
+ * ignored. A rewrite that keeps the length, lands within the file system's timestamp
+ * granularity and only changes bytes outside the fingerprinted blocks goes unnoticed;
+ * years are replaced through {@link Budget}, which rebuilds the sidecar itself.
+ */
+public final class ColumnarYearFile {
+
+    /** File name extension of the sidecar files. */
+    public static final String EXTENSION = ".pfmc";
+
+    private static final int MAGIC = 0x50464D43; // "PFMC"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 48;
+    /** Bytes hashed at each end of the CSV by {@link #fingerprint}. */
+    private static final int FINGERPRINT_BLOCK = 4096;
+
+    private final int rows;
+    private final int invalidRows;
+    private final IntBuffer dates;
+    private final IntBuffer categoryIds;
+    private final LongBuffer amounts;
+    private final CategoryDictionary categories;
+
+    private ColumnarYearFile(int rows, int invalidRows, IntBuffer dates, IntBuffer categoryIds,
+                             LongBuffer amounts, CategoryDictionary categories) {
+        this.rows = rows;
+        this.invalidRows = invalidRows;
+        this.dates = dates;
+        this.categoryIds = categoryIds;
+        this.amounts = amounts;
+        this.categories = categories;
+    }
+
+    /** @return the number of valid rows. */
+    public int rows() { return rows; }
+    /** @return the number of lines of the CSV that failed validation and are not stored. */
+    public int invalidRows() { return invalidRows; }
+    /** @return true if every line of the CSV was valid. */
+    public boolean isValid() { return invalidRows == 0; }
+    /** @return the date of a row packed as {@code year * 10000 + month * 100 + day}. */
+    public int date(int row) { return dates.get(row); }
+    /** @return the month (1-12) of a row. */
+    public int month(int row) { return dates.get(row) / 100 % 100; }
+    /** @return the day of the month of a row. */
+    public int day(int row) { return dates.get(row) % 100; }
+    /** @return the year of a row. */
+    public int year(int row) { return dates.get(row) / 10000; }
+    /** @return the category id of a row. */
+    public int categoryId(int row) { return categoryIds.get(row); }
+    /** @return the category name of a row. */
+    public String category(int row) { return categories.name(categoryIds.get(row)); }
+    /** @return the amount in dollars of a row. */
+    public long amount(int row) { return amounts.get(row); }
+    /** @return the dictionary the category ids refer to. */
+    public CategoryDictionary getCategories() { return categories; }
+
+    /**
+     * Returns the sidecar file that belongs to a CSV file.
+     * @param csv the year CSV file.
+     * @return the sidecar file, which may not exist.
+     */
+    public static File sidecarFor(File csv) {
+        String name = csv.getName();
+        if (name.toLowerCase().endsWith(".csv")) name = name.substring(0, name.length() - 4);
+        return new File(csv.getParentFile(), name + EXTENSION);
+    }
+
+    /**
+     * Maps the sidecar of a CSV file.
+     * @param csv the year CSV file.
+     * @return the mapped columns, or null if there is no up-to-date sidecar.
+     */
+    public static ColumnarYearFile open(File csv) {
+        File sidecar = sidecarFor(csv);
+        if (!IOAccounting.isFile(sidecar)) return null;
+
+        try (RandomAccessFile raf = IOAccounting.openRandomAccess(sidecar, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() < HEADER_SIZE) return null;
+            MappedByteBuffer map = IOAccounting.map(channel, FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) return null;
+            if (map.getLong(8) != IOAccounting.length(csv) || map.getLong(16) != IOAccounting.lastModified(csv)
+                    || map.getLong(24) != fingerprint(csv)) {
+                return null;
+            }
+
+            int rows = map.getInt(32);
+            int invalidRows = map.getInt(36);
+            int dictionarySize = map.getInt(40);
+            CategoryDictionary categories = CategoryDictionary.forDirectory(csv.getAbsoluteFile().getParentFile());
+            if (rows < 0 || HEADER_SIZE + 16L * rows > channel.size() || dictionarySize > categories.size()) {
+                return null;
+            }
+
+            return new ColumnarYearFile(rows, invalidRows,
+                    slice(map, HEADER_SIZE, 4L * rows).asIntBuffer(),
+                    slice(map, HEADER_SIZE + 4L * rows, 4L * rows).asIntBuffer(),
+                    slice(map, HEADER_SIZE + 8L * rows, 8L * rows).asLongBuffer(),
+                    categories);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt sidecar is rebuilt from the CSV
+            return null;
+        }
+    }
+
+    /**
+     * Maps the sidecar of a CSV file, first rebuilding it from the CSV if it is missing
+     * or stale. If the sidecar cannot be written, the parsed columns are kept in memory.
+     * @param csv the year CSV file.
+     * @param year the year every row must belong to.
+     * @return the columns of the year.
+     * @throws IOException if the CSV cannot be read.
+     */
+    public static ColumnarYearFile openOrBuild(File csv, int year) throws IOException {
+        ColumnarYearFile columns = open(csv);
+        if (columns != null) return columns;
+
+        CategoryDictionary categories = CategoryDictionary.forDirectory(csv.getAbsoluteFile().getParentFile());
+        TransactionTable.Builder builder = new TransactionTable.Builder(categories);
+        YearFileParser.Result result = YearFileParser.parse(csv.getPath(), year, false, categories, builder,
+                YearFileParser.defaultParallelism());
+        TransactionTable table = builder.build();
+        try {
+            write(csv, table, result.getInvalidRows());
+        } catch (IOException e) {
+            System.err.println("Could not save columnar copy of " + csv.getName() + ": " + e.getMessage());
+        }
+        columns = open(csv);
+        return columns != null ? columns : of(table, result.getInvalidRows());
+    }
+
+    /**
+     * Hashes the first and last {@value #FINGERPRINT_BLOCK} bytes of a CSV file, so a
+     * rewrite of the same length within the file system's timestamp granularity is
+     * still noticed unless it only touches the middle of the file.
+     * @param csv the year CSV file.
+     * @return the CRC-32 of the two blocks.
+     * @throws IOException if the CSV cannot be read.
+     */
+    static long fingerprint(File csv) throws IOException {
+        try (FileChannel channel = IOAccounting.openChannel(csv.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            CRC32 crc = new CRC32();
+            ByteBuffer block = ByteBuffer.allocate(FINGERPRINT_BLOCK);
+            hashBlock(channel, 0, block, crc);
+            if (size > FINGERPRINT_BLOCK) hashBlock(channel, Math.max(FINGERPRINT_BLOCK, size - FINGERPRINT_BLOCK), block, crc);
+            return crc.getValue();
+        }
+    }
+
+    private static void hashBlock(FileChannel channel, long position, ByteBuffer block, CRC32 crc) throws IOException {
+        block.clear();
+        while (block.hasRemaining()) {
+            int read = IOAccounting.read(channel, block, position + block.position());
+            if (read < 0) break;
+        }
+        block.flip();
+        crc.update(block);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long offset, long length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) offset);
+        view.limit((int) (offset + length));
+        return view.slice();
+    }
+
+    /**
+     * Copies the columns into a heap {@link TransactionTable}.
+     * @return the rows as a table.
+     */
+    public TransactionTable toTable() {
+        int[] dateColumn = new int[rows];
+        int[] categoryColumn = new int[rows];
+        long[] amountColumn = new long[rows];
+        dates.duplicate().get(dateColumn);
+        categoryIds.duplicate().get(categoryColumn);
+        amounts.duplicate().get(amountColumn);
+        return new TransactionTable(rows, dateColumn, categoryColumn, amountColumn, categories);
+    }
+
+    /**
+     * Wraps an in-memory table, for when no sidecar can be written.
+     * @param table the parsed rows.
+     * @param invalidRows the number of lines of the CSV that were rejected.
+     * @return columns backed by the table's arrays.
+     */
+    static ColumnarYearFile of(TransactionTable table, int invalidRows) {
+        return new ColumnarYearFile(table.size(), invalidRows,
+                IntBuffer.wrap(table.dates()), IntBuffer.wrap(table.categoryIds()),
+                LongBuffer.wrap(table.amounts()), table.getCategories());
+    }
+
+    /**
+     * Writes a table as the sidecar of a CSV file, stamped with the CSV's current
+     * length, modification time and fingerprint. The sidecar is replaced through a
+     * temporary file, as readers may have the old one mapped.
+     * @param csv the CSV file the rows were read from.
+     * @param table the valid rows of the CSV.
+     * @param invalidRows the number of lines of the CSV that were rejected.
+     * @throws IOException if the sidecar cannot be written, or the rows do not fit in one.
+     */
+    public static void write(File csv, TransactionTable table, int invalidRows) throws IOException {
+        int rows = table.size();
+        long size = HEADER_SIZE + 16L * rows;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Too many rows for a columnar copy: " + rows);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION)
+              .putLong(IOAccounting.length(csv)).putLong(IOAccounting.lastModified(csv)).putLong(fingerprint(csv))
+              .putInt(rows).putInt(invalidRows).putInt(table.getCategories().size()).putInt(0);
+        buffer.asIntBuffer().put(table.dates(), 0, rows);
+        buffer.position(HEADER_SIZE + 4 * rows);
+        buffer.asIntBuffer().put(table.categoryIds(), 0, rows);
+        buffer.position(HEADER_SIZE + 8 * rows);
+        buffer.asLongBuffer().put(table.amounts(), 0, rows);
+        buffer.position(buffer.capacity());
+        buffer.flip();
+        AtomicFiles.write(sidecarFor(csv).toPath(), buffer);
+    }
+}
@@ -0,0 +1,407 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Month-ahead expense forecasts per category, from additive Holt-Winters models
+ * (level, trend and a 12-month season) fitted over the monthly expenses of every year
+ * file of a user.
+ *
+ * <p>The series of a user runs through the years present, in order: from the first
+ * month with transactions of the first year to the last month with transactions of the
+ * last year, with months in between, including whole years without a file, counting as
+ * zero. The fitted state is kept in {@code forecast.model} next to the year files
+ * together with the stamp of every year file it has consumed, so that
+ * {@link #refresh(File)} after an upload or delete only feeds the months that were
+ * added, and saves the model only if it changed. It refits from scratch only when a
+ * year it has already consumed changed in its consumed months, was deleted, or a year
+ * is added before the end of the series.</p>
+ *
+ * <p>Forecasts are served by {@link #current(File)}, which only reads the saved model
+ * unless the year files changed without a refresh.</p>
+ */
+public final class ExpenseForecaster {
+
+    /** Name of the model file inside a user directory. */
+    public static final String FILE_NAME = "forecast.model";
+
+    /** Smoothing factor of the level. */
+    public static final double ALPHA = 0.3;
+    /** Smoothing factor of the trend. */
+    public static final double BETA = 0.1;
+    /** Smoothing factor of the season. */
+    public static final double GAMMA = 0.2;
+
+    private static final int MAGIC = 0x50464D46; // "PFMF"
+    private static final int VERSION = 1;
+
+    /**
+     * What the model knows about one consumed year file.
+     */
+    private static final class YearStamp {
+        final long length;
+        final long lastModified;
+        final int throughMonth; // last month fed to the models
+        final long hash;        // of the expenses of months 1..throughMonth
+
+        YearStamp(long length, long lastModified, int throughMonth, long hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.throughMonth = throughMonth;
+            this.hash = hash;
+        }
+    }
+
+    private final File directory;
+    private final CategoryDictionary categories;
+    private final TreeMap<Integer, YearStamp> years = new TreeMap<>();
+    private int lastYear;  // position of the last month fed, 0 if none
+    private int lastMonth;
+    private int width;
+    private double[] levels = new double[0];
+    private double[] trends = new double[0];
+    private double[] seasons = new double[0]; // 12 per category
+    private boolean changed; // since loaded or saved
+
+    private ExpenseForecaster(File directory) {
+        this.directory = directory;
+        this.categories = CategoryDictionary.forDirectory(directory);
+    }
+
+    /**
+     * Returns the saved model of a user for forecasting, refreshing it first only if it
+     * is missing or the year files changed since it was saved.
+     * @param userDirectory the {@code pfm_data/<user>} directory.
+     * @return the up-to-date model.
+     * @throws IOException if a year file or the model cannot be read or written.
+     */
+    public static ExpenseForecaster current(File userDirectory) throws IOException {
+        File directory = userDirectory.getAbsoluteFile();
+        Lock lock = UserLocks.shared().forDirectory(directory).readLock();
+        lock.lock();
+        try {
+            ExpenseForecaster model = load(directory);
+            if (model != null && model.isCurrent()) return model;
+        } finally {
+            lock.unlock();
+        }
+        return refresh(directory);
+    }
+
+    /**
+     * Brings the model of a user up to date with its year files, and saves it if that
+     * changed it. Called after a year file is saved or deleted.
+     * @param userDirectory the {@code pfm_data/<user>} directory.
+     * @return the up-to-date model.
+     * @throws IOException if a year file or the model cannot be read or written.
+     */
+    public static ExpenseForecaster refresh(File userDirectory) throws IOException {
+        File directory = userDirectory.getAbsoluteFile();
+        // The model file is written, so refreshes of one user must not overlap
+        Lock lock = UserLocks.shared().forDirectory(directory).writeLock();
+        lock.lock();
+        try {
+            ExpenseForecaster model = load(directory);
+            if (model == null || !model.update()) {
+                model = new ExpenseForecaster(directory);
+                model.update();
+                model.changed = true;
+            }
+            if (model.changed) model.save();
+            return model;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the year files of the user by year. */
+    private TreeMap<Integer, File> yearFiles() {
+        TreeMap<Integer, File> files = new TreeMap<>();
+        File[] csvs = IOAccounting.listFiles(directory, (dir, name) -> name.matches("\\d{4}\\.csv"));
+        if (csvs != null) {
+            for (File csv : csvs) files.put(Integer.parseInt(csv.getName().substring(0, 4)), csv);
+        }
+        return files;
+    }
+
+    /** @return true if the model has consumed exactly the current year files. */
+    private boolean isCurrent() {
+        TreeMap<Integer, File> files = yearFiles();
+        if (!files.keySet().equals(years.keySet())) return false;
+        for (Map.Entry<Integer, File> entry : files.entrySet()) {
+            YearStamp stamp = years.get(entry.getKey());
+            File csv = entry.getValue();
+            if (stamp.length != IOAccounting.length(csv) || stamp.lastModified != IOAccounting.lastModified(csv)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Feeds the months added since the model was saved.
+     * @return false if the model must be refitted from scratch instead.
+     */
+    private boolean update() throws IOException {
+        TreeMap<Integer, File> files = yearFiles();
+        for (int year : years.keySet()) {
+            if (!files.containsKey(year)) return false;
+        }
+
+        for (Map.Entry<Integer, File> entry : files.entrySet()) {
+            int year = entry.getKey();
+            File csv = entry.getValue();
+            YearStamp stamp = years.get(year);
+            if (stamp != null && stamp.length == IOAccounting.length(csv)
+                    && stamp.lastModified == IOAccounting.lastModified(csv)) {
+                continue;
+            }
+
+            YearCube cube = ParsedYearCache.shared().cube(csv, year);
+            int last = lastActiveMonth(cube);
+            if (stamp != null) {
+                // A consumed year may only have changed after its consumed months,
+                // and only the last year of the series can still grow
+                if (hash(cube, stamp.throughMonth) != stamp.hash) return false;
+                if (year < lastYear && stamp.throughMonth < 12) return false;
+            } else if (year < lastYear) {
+                return false;
+            }
+
+            int from;
+            if (lastYear == 0) {
+                from = firstActiveMonth(cube);
+            } else if (year > lastYear) {
+                closeLastYear();
+                for (int missing = lastYear + 1; missing < year; missing++) {
+                    for (int m = 1; m <= 12; m++) feedZeros(missing, m);
+                }
+                from = 1;
+            } else {
+                from = stamp.throughMonth + 1;
+            }
+            for (int m = from; m <= last; m++) feed(year, m, cube);
+            int through = Math.max(last, stamp != null ? stamp.throughMonth : 0);
+            years.put(year, new YearStamp(IOAccounting.length(csv), IOAccounting.lastModified(csv), through,
+                    hash(cube, through)));
+            changed = true;
+        }
+        return true;
+    }
+
+    /**
+     * Feeds zeros for the rest of the last year of the series, once a later year starts.
+     * Its hash stays valid since the months added had no expenses.
+     */
+    private void closeLastYear() {
+        for (int m = lastMonth + 1; m <= 12; m++) feedZeros(lastYear, m);
+        YearStamp previous = years.get(lastYear);
+        years.put(lastYear, new YearStamp(previous.length, previous.lastModified, 12, previous.hash));
+    }
+
+    /**
+     * Feeds the expenses of one month to every category's model.
+     */
+    private void feed(int year, int month, YearCube cube) {
+        grow(cube.categoryCount());
+        for (int c = 0; c < width; c++) step(c, month, cube.expenses(month, c));
+        lastYear = year;
+        lastMonth = month;
+    }
+
+    private void feedZeros(int year, int month) {
+        for (int c = 0; c < width; c++) step(c, month, 0);
+        lastYear = year;
+        lastMonth = month;
+    }
+
+    /** One additive Holt-Winters update of a category. */
+    private void step(int category, int month, double value) {
+        int s = category * 12 + month - 1;
+        double level = levels[category];
+        double trend = trends[category];
+        double newLevel = ALPHA * (value - seasons[s]) + (1 - ALPHA) * (level + trend);
+        trends[category] = BETA * (newLevel - level) + (1 - BETA) * trend;
+        seasons[s] = GAMMA * (value - newLevel) + (1 - GAMMA) * seasons[s];
+        levels[category] = newLevel;
+    }
+
+    /** Categories first seen later start from a zero state, as if fed zeros so far. */
+    private void grow(int categories) {
+        if (categories <= width) return;
+        levels = Arrays.copyOf(levels, categories);
+        trends = Arrays.copyOf(trends, categories);
+        seasons = Arrays.copyOf(seasons, categories * 12);
+        width = categories;
+    }
+
+    private static int firstActiveMonth(YearCube cube) {
+        for (int m = 1; m <= 12; m++) {
+            if (active(cube, m)) return m;
+        }
+        return 13;
+    }
+
+    private static int lastActiveMonth(YearCube cube) {
+        for (int m = 12; m >= 1; m--) {
+            if (active(cube, m)) return m;
+        }
+        return 0;
+    }
+
+    private static boolean active(YearCube cube, int month) {
+        for (int c = 0; c < cube.categoryCount(); c++) {
+            if (cube.incomeCount(month, c) > 0 || cube.expenseCount(month, c) > 0) return true;
+        }
+        return false;
+    }
+
+    private static long hash(YearCube cube, int throughMonth) {
+        long hash = 1125899906842597L;
+        for (int m = 1; m <= throughMonth; m++) {
+            for (int c = 0; c < cube.categoryCount(); c++) {
+                long expenses = cube.expenses(m, c);
+                if (expenses != 0) hash = 31 * (31 * hash + m * 65536L + c) + expenses;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @param categoryId a category id.
+     * @return the forecast expenses of the category in the month after the series.
+     */
+    public long forecast(int categoryId) {
+        if (categoryId < 0 || categoryId >= width || lastYear == 0) return 0;
+        int next = lastMonth % 12; // season index of the next month
+        double value = levels[categoryId] + trends[categoryId] + seasons[categoryId * 12 + next];
+        return Math.max(0, Math.round(value));
+    }
+
+    /**
+     * @param category a category name.
+     * @return the forecast expenses of the category in the month after the series.
+     */
+    public long forecast(String category) {
+        return forecast(categories.lookup(category));
+    }
+
+    /**
+     * @return the forecast expenses of every category with a non-zero forecast, largest first.
+     */
+    public Map<String, Long> forecastAll() {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < width; id++) {
+            if (forecast(id) > 0) ids.add(id);
+        }
+        ids.sort((a, b) -> Long.compare(forecast(b), forecast(a)));
+        Map<String, Long> forecasts = new LinkedHashMap<>();
+        for (int id : ids) forecasts.put(categories.name(id), forecast(id));
+        return forecasts;
+    }
+
+    /** @return the year of the month being forecast, or 0 if there is no data. */
+    public int getForecastYear() {
+        return lastYear == 0 ? 0 : lastMonth == 12 ? lastYear + 1 : lastYear;
+    }
+
+    /** @return the month (1-12) being forecast, or 0 if there is no data. */
+    public int getForecastMonth() {
+        return lastYear == 0 ? 0 : lastMonth % 12 + 1;
+    }
+
+    private static ExpenseForecaster load(File directory) {
+        File file = new File(directory, FILE_NAME);
+        if (!IOAccounting.isFile(file)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(IOAccounting.openInput(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (in.readDouble() != ALPHA || in.readDouble() != BETA || in.readDouble() != GAMMA) return null;
+
+            ExpenseForecaster model = new ExpenseForecaster(directory);
+            model.lastYear = in.readInt();
+            model.lastMonth = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int year = in.readInt();
+                model.years.put(year, new YearStamp(in.readLong(), in.readLong(), in.readInt(), in.readLong()));
+            }
+            model.grow(in.readInt());
+            for (int c = 0; c < model.width; c++) {
+                model.levels[c] = in.readDouble();
+                model.trends[c] = in.readDouble();
+                for (int m = 0; m < 12; m++) model.seasons[c * 12 + m] = in.readDouble();
+            }
+            return model;
+        } catch (IOException e) {
+            // A truncated or corrupt model is refitted
+            return null;
+        }
+    }
+
+    private void save() throws IOException {
+        File file = new File(directory, FILE_NAME);
+        File temp = new File(directory, FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(IOAccounting.openOutput(temp, false)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(ALPHA);
+            out.writeDouble(BETA);
+            out.writeDouble(GAMMA);
+            out.writeInt(lastYear);
+            out.writeInt(lastMonth);
+            out.writeInt(years.size());
+            for (Map.Entry<Integer, YearStamp> entry : years.entrySet()) {
+                YearStamp stamp = entry.getValue();
+                out.writeInt(entry.getKey());
+                out.writeLong(stamp.length);
+                out.writeLong(stamp.lastModified);
+                out.writeInt(stamp.throughMonth);
+                out.writeLong(stamp.hash);
+            }
+            out.writeInt(width);
+            for (int c = 0; c < width; c++) {
+                out.writeDouble(levels[c]);
+                out.writeDouble(trends[c]);
+                for (int m = 0; m < 12; m++) out.writeDouble(seasons[c * 12 + m]);
+            }
+        }
+        IOAccounting.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+
+    /**
+     * Refreshes the model of a user and prints next month's forecast.
+     * @param args the {@code pfm_data/<user>} directory.
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: ExpenseForecaster <user directory>");
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            ExpenseForecaster model = refresh(new File(args[0]));
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("Forecast for %d/%d (refreshed in %.2f ms)%n", model.getForecastMonth(),
+                    model.getForecastYear(), elapsed / 1e6);
+            for (Map.Entry<String, Long> entry : model.forecastAll().entrySet()) {
+                System.out.printf("%-25s $%d%n", entry.getKey(), entry.getValue());
+            }
+        } catch (IOException e) {
+            System.err.println("Forecast failed: " + e.getMessage());
+        }
+    }
+}
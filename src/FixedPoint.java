@@ -0,0 +1,104 @@
+import java.io.IOException;
+
+/**
+ * Formats fixed-point decimal numbers without going through {@link String#format}:
+ * digits are produced into a small scratch buffer and appended to the destination
+ * directly, so formatting a number allocates nothing.
+ *
+ * <p>A value is a {@code long} together with a scale, the number of digits after the
+ * decimal point; {@code (123456, 2)} is {@code 1234.56}.</p>
+ *
+ * <p>Instances of this class are not allowed.</p>
+ */
+public final class FixedPoint {
+
+    // Long.MIN_VALUE has 19 digits, plus sign and decimal point
+    private static final int MAX_CHARS = 21;
+
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[MAX_CHARS]);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private FixedPoint() {}
+
+    /**
+     * Appends a fixed-point number.
+     * @param out the destination.
+     * @param value the unscaled value.
+     * @param scale the number of digits after the decimal point (0-18).
+     * @throws IOException if the destination throws.
+     */
+    public static void append(Appendable out, long value, int scale) throws IOException {
+        char[] buf = SCRATCH.get();
+        int start = format(value, scale, buf);
+        for (int i = start; i < MAX_CHARS; i++) out.append(buf[i]);
+    }
+
+    /**
+     * Appends whole dollars with two decimals, as {@code "%.2f"} would.
+     * @param out the destination.
+     * @param dollars the amount in dollars.
+     * @throws IOException if the destination throws.
+     */
+    public static void appendDollars(Appendable out, long dollars) throws IOException {
+        append(out, dollars * 100, 2);
+    }
+
+    /**
+     * Appends a fixed-point number left-justified in a column, padding with spaces as
+     * {@code "%-<width>.<scale>f"} would.
+     * @param out the destination.
+     * @param value the unscaled value.
+     * @param scale the number of digits after the decimal point (0-18).
+     * @param width the minimum number of characters written.
+     * @throws IOException if the destination throws.
+     */
+    public static void appendPadded(Appendable out, long value, int scale, int width) throws IOException {
+        char[] buf = SCRATCH.get();
+        int start = format(value, scale, buf);
+        for (int i = start; i < MAX_CHARS; i++) out.append(buf[i]);
+        for (int i = MAX_CHARS - start; i < width; i++) out.append(' ');
+    }
+
+    /**
+     * @param value the unscaled value.
+     * @param scale the number of digits after the decimal point (0-18).
+     * @return the number of characters the value is formatted as.
+     */
+    public static int length(long value, int scale) {
+        return MAX_CHARS - format(value, scale, SCRATCH.get());
+    }
+
+    /**
+     * @return the value formatted as a string.
+     */
+    public static String toString(long value, int scale) {
+        char[] buf = SCRATCH.get();
+        int start = format(value, scale, buf);
+        return new String(buf, start, MAX_CHARS - start);
+    }
+
+    /**
+     * Formats right-aligned into {@code buf}.
+     * @return the index of the first character.
+     */
+    private static int format(long value, int scale, char[] buf) {
+        if (scale < 0 || scale > 18) throw new IllegalArgumentException("Invalid scale: " + scale);
+        // Work on the negative value so that Long.MIN_VALUE needs no special case
+        boolean negative = value < 0;
+        long rest = negative ? value : -value;
+        int pos = MAX_CHARS;
+        for (int digits = 0; digits < scale; digits++) {
+            buf[--pos] = (char) ('0' - rest % 10);
+            rest /= 10;
+        }
+        if (scale > 0) buf[--pos] = '.';
+        do {
+            buf[--pos] = (char) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (negative) buf[--pos] = '-';
+        return pos;
+    }
+}
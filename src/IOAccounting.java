@@ -0,0 +1,537 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accounting of file I/O per logical operation, to find and prove redundant I/O. File
+ * access in the application goes through the methods of this class, which do the I/O
+ * and count, for the operation running on the calling thread: opens, metadata calls
+ * (stat, list, delete, ...), read and write calls with their bytes, and the wall time
+ * spent in them. Opening a file that the same run of the operation has already opened
+ * is also counted as a reopen.
+ *
+ * <p>An operation is delimited by {@link #begin}; scopes do not nest, so I/O is
+ * charged to the outermost operation, e.g. the main menu option rather than the
+ * validation it calls. Work handed to another thread is charged to the operation if it
+ * is wrapped with {@link #propagate}; I/O outside any scope is charged to
+ * {@value #UNSCOPED}.</p>
+ *
+ * <p>The totals of each operation are published in {@link Metrics} as
+ * {@code io.<operation>.<counter>}. If the {@code pfm.io.trace} system property is set,
+ * every call is also logged to that file, or to {@code System.err} if it is
+ * {@code stderr}, as {@code operation event path bytes nanos} lines.</p>
+ *
+ * <p>Instances of this class are not allowed.</p>
+ */
+public final class IOAccounting {
+
+    /** Operation charged with I/O done outside any scope. */
+    public static final String UNSCOPED = "other";
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+    private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+    private static final PrintStream TRACE = openTrace(System.getProperty("pfm.io.trace"));
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private IOAccounting() {}
+
+    /**
+     * I/O totals of one operation.
+     */
+    public static final class Stats {
+        private final LongAdder runs = new LongAdder();
+        private final LongAdder opens = new LongAdder();
+        private final LongAdder reopens = new LongAdder();
+        private final LongAdder metadata = new LongAdder();
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder writes = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        /** @return the number of times the operation ran. */
+        public long runs() { return runs.sum(); }
+        /** @return the number of files opened. */
+        public long opens() { return opens.sum(); }
+        /** @return the number of opens of a file already opened by the same run. */
+        public long reopens() { return reopens.sum(); }
+        /** @return the number of metadata calls. */
+        public long metadata() { return metadata.sum(); }
+        /** @return the number of read calls. */
+        public long reads() { return reads.sum(); }
+        /** @return the number of bytes read. */
+        public long bytesRead() { return bytesRead.sum(); }
+        /** @return the number of write and sync calls. */
+        public long writes() { return writes.sum(); }
+        /** @return the number of bytes written. */
+        public long bytesWritten() { return bytesWritten.sum(); }
+        /** @return the number of system calls: opens, metadata calls, reads and writes. */
+        public long syscalls() { return opens() + metadata() + reads() + writes(); }
+        /** @return the wall time spent in the calls, in nanoseconds. */
+        public long nanos() { return nanos.sum(); }
+
+        @Override
+        public String toString() {
+            return "runs=" + runs() + ", opens=" + opens() + ", reopens=" + reopens() + ", metadata=" + metadata()
+                    + ", reads=" + reads() + ", bytesRead=" + bytesRead() + ", writes=" + writes()
+                    + ", bytesWritten=" + bytesWritten() + ", ms=" + nanos() / 1_000_000;
+        }
+    }
+
+    /**
+     * One run of an operation, bound to the threads doing its I/O.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final String operation;
+        private final Stats stats;
+        private final Map<String, Boolean> opened = new ConcurrentHashMap<>();
+        private final boolean owner;
+
+        private Scope(String operation, Stats stats, boolean owner) {
+            this.operation = operation;
+            this.stats = stats;
+            this.owner = owner;
+        }
+
+        /** @return the operation charged with the I/O of this scope. */
+        public String operation() {
+            return operation;
+        }
+
+        /** Ends the operation on this thread; a nested scope leaves the outer one running. */
+        @Override
+        public void close() {
+            if (owner) CURRENT.remove();
+        }
+    }
+
+    /**
+     * Starts an operation on the calling thread, unless one is already running there.
+     * The scope is usually only opened and closed by a try-with-resources statement, so
+     * callers suppress the {@code try} lint warning about its unused variable.
+     * @param operation the name of the operation, e.g. {@code menu.report}.
+     * @return the scope to close when the operation ends.
+     */
+    public static Scope begin(String operation) {
+        Scope outer = CURRENT.get();
+        if (outer != null) return new Scope(outer.operation, outer.stats, false);
+        Scope scope = new Scope(operation, stats(operation), true);
+        scope.stats.runs.increment();
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * Wraps a task so that it charges its I/O to the operation running on the calling
+     * thread, wherever it runs.
+     * @param task the task.
+     * @return the wrapped task.
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        Scope scope = CURRENT.get();
+        if (scope == null) return task;
+        return () -> {
+            Scope previous = CURRENT.get();
+            CURRENT.set(scope);
+            try {
+                return task.call();
+            } finally {
+                if (previous == null) CURRENT.remove();
+                else CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * @param operation the name of an operation.
+     * @return its totals, created empty on first use.
+     */
+    public static Stats stats(String operation) {
+        return STATS.computeIfAbsent(operation, IOAccounting::register);
+    }
+
+    /** @return the totals of every operation so far, by name. */
+    public static Map<String, Stats> snapshot() {
+        return new TreeMap<>(STATS);
+    }
+
+    private static Stats register(String operation) {
+        Stats stats = new Stats();
+        Metrics metrics = Metrics.shared();
+        String prefix = "io." + operation + ".";
+        metrics.gauge(prefix + "runs", stats::runs);
+        metrics.gauge(prefix + "opens", stats::opens);
+        metrics.gauge(prefix + "reopens", stats::reopens);
+        metrics.gauge(prefix + "metadata", stats::metadata);
+        metrics.gauge(prefix + "reads", stats::reads);
+        metrics.gauge(prefix + "bytesRead", stats::bytesRead);
+        metrics.gauge(prefix + "writes", stats::writes);
+        metrics.gauge(prefix + "bytesWritten", stats::bytesWritten);
+        metrics.gauge(prefix + "syscalls", stats::syscalls);
+        metrics.gauge(prefix + "nanos", stats::nanos);
+        return stats;
+    }
+
+    // ---- Accounting ----
+
+    private enum Event { OPEN, METADATA, READ, WRITE }
+
+    private static void account(Event event, Object path, long bytes, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        Scope scope = CURRENT.get();
+        Stats stats = scope != null ? scope.stats : stats(UNSCOPED);
+        switch (event) {
+            case OPEN:
+                stats.opens.increment();
+                if (scope != null && scope.opened.putIfAbsent(key(path), Boolean.TRUE) != null) {
+                    stats.reopens.increment();
+                }
+                break;
+            case METADATA:
+                stats.metadata.increment();
+                break;
+            case READ:
+                stats.reads.increment();
+                if (bytes > 0) stats.bytesRead.add(bytes);
+                break;
+            case WRITE:
+                stats.writes.increment();
+                if (bytes > 0) stats.bytesWritten.add(bytes);
+                break;
+        }
+        stats.nanos.add(elapsed);
+        if (TRACE != null) {
+            TRACE.println((scope != null ? scope.operation : UNSCOPED) + " " + event + " " + path + " "
+                    + Math.max(0, bytes) + " " + elapsed);
+        }
+    }
+
+    private static String key(Object path) {
+        return path instanceof File ? ((File) path).getAbsolutePath() : path.toString();
+    }
+
+    private static PrintStream openTrace(String target) {
+        if (target == null || target.isEmpty()) return null;
+        if (target.equals("stderr")) return System.err;
+        try {
+            return new PrintStream(new FileOutputStream(target, true), true, "UTF-8");
+        } catch (IOException e) {
+            System.err.println("Could not open I/O trace " + target + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // ---- Metadata ----
+
+    /** @see File#exists() */
+    public static boolean exists(File file) {
+        long start = System.nanoTime();
+        boolean exists = file.exists();
+        account(Event.METADATA, file, 0, start);
+        return exists;
+    }
+
+    /** @see File#isFile() */
+    public static boolean isFile(File file) {
+        long start = System.nanoTime();
+        boolean isFile = file.isFile();
+        account(Event.METADATA, file, 0, start);
+        return isFile;
+    }
+
+    /** @see File#isDirectory() */
+    public static boolean isDirectory(File file) {
+        long start = System.nanoTime();
+        boolean isDirectory = file.isDirectory();
+        account(Event.METADATA, file, 0, start);
+        return isDirectory;
+    }
+
+    /** @see File#canRead() */
+    public static boolean canRead(File file) {
+        long start = System.nanoTime();
+        boolean canRead = file.canRead();
+        account(Event.METADATA, file, 0, start);
+        return canRead;
+    }
+
+    /** @see File#length() */
+    public static long length(File file) {
+        long start = System.nanoTime();
+        long length = file.length();
+        account(Event.METADATA, file, 0, start);
+        return length;
+    }
+
+    /** @see File#lastModified() */
+    public static long lastModified(File file) {
+        long start = System.nanoTime();
+        long lastModified = file.lastModified();
+        account(Event.METADATA, file, 0, start);
+        return lastModified;
+    }
+
+    /** @see BasicFileAttributes#fileKey() */
+    public static Object fileKey(File file) throws IOException {
+        long start = System.nanoTime();
+        Object key = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        account(Event.METADATA, file, 0, start);
+        return key;
+    }
+
+    /** @see File#listFiles() */
+    public static File[] listFiles(File directory) {
+        long start = System.nanoTime();
+        File[] files = directory.listFiles();
+        account(Event.METADATA, directory, 0, start);
+        return files;
+    }
+
+    /** @see File#listFiles(FilenameFilter) */
+    public static File[] listFiles(File directory, FilenameFilter filter) {
+        long start = System.nanoTime();
+        File[] files = directory.listFiles(filter);
+        account(Event.METADATA, directory, 0, start);
+        return files;
+    }
+
+    /** @see File#mkdirs() */
+    public static boolean mkdirs(File directory) {
+        long start = System.nanoTime();
+        boolean created = directory.mkdirs();
+        account(Event.METADATA, directory, 0, start);
+        return created;
+    }
+
+    /** @see File#delete() */
+    public static boolean delete(File file) {
+        long start = System.nanoTime();
+        boolean deleted = file.delete();
+        account(Event.METADATA, file, 0, start);
+        return deleted;
+    }
+
+    /** @see Files#deleteIfExists(Path) */
+    public static boolean deleteIfExists(Path path) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return Files.deleteIfExists(path);
+        } finally {
+            account(Event.METADATA, path, 0, start);
+        }
+    }
+
+    /** @see Files#move(Path, Path, CopyOption...) */
+    public static void move(Path source, Path target, CopyOption... options) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Files.move(source, target, options);
+        } finally {
+            account(Event.METADATA, target, 0, start);
+        }
+    }
+
+    // ---- Streams ----
+
+    /**
+     * Opens a file for reading; every read call on the stream is accounted.
+     * @see FileInputStream#FileInputStream(File)
+     */
+    public static FileInputStream openInput(File file) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return new AccountedInputStream(file);
+        } finally {
+            account(Event.OPEN, file, 0, start);
+        }
+    }
+
+    /**
+     * Opens a file for writing; every write call on the stream is accounted.
+     * @see FileOutputStream#FileOutputStream(File, boolean)
+     */
+    public static FileOutputStream openOutput(File file, boolean append) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return new AccountedOutputStream(file, append);
+        } finally {
+            account(Event.OPEN, file, 0, start);
+        }
+    }
+
+    /** Opens a text file for reading in the platform charset, like {@link java.io.FileReader}. */
+    public static BufferedReader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(openInput(file)));
+    }
+
+    /** Opens a text file for writing in the platform charset, like {@link java.io.FileWriter}. */
+    public static BufferedWriter openWriter(File file, boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(openOutput(file, append)));
+    }
+
+    /**
+     * Flushes a stream's file to disk.
+     * @see java.io.FileDescriptor#sync()
+     */
+    public static void sync(FileOutputStream out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            out.getFD().sync();
+        } finally {
+            Object path = out instanceof AccountedOutputStream ? ((AccountedOutputStream) out).file : "-";
+            account(Event.WRITE, path, 0, start);
+        }
+    }
+
+    private static final class AccountedInputStream extends FileInputStream {
+        private final File file;
+
+        AccountedInputStream(File file) throws IOException {
+            super(file);
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            account(Event.READ, file, b < 0 ? 0 : 1, start);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int n = super.read(b, off, len);
+            account(Event.READ, file, n, start);
+            return n;
+        }
+
+        @Override
+        public int read(byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+    }
+
+    private static final class AccountedOutputStream extends FileOutputStream {
+        private final File file;
+
+        AccountedOutputStream(File file, boolean append) throws IOException {
+            super(file, append);
+            this.file = file;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            super.write(b);
+            account(Event.WRITE, file, 1, start);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            super.write(b, off, len);
+            account(Event.WRITE, file, len, start);
+        }
+
+        @Override
+        public void write(byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+    }
+
+    // ---- Channels ----
+
+    /** @see FileChannel#open(Path, OpenOption...) */
+    public static FileChannel openChannel(Path path, OpenOption... options) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return FileChannel.open(path, options);
+        } finally {
+            account(Event.OPEN, path, 0, start);
+        }
+    }
+
+    /** @see RandomAccessFile#RandomAccessFile(File, String) */
+    public static RandomAccessFile openRandomAccess(File file, String mode) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return new RandomAccessFile(file, mode);
+        } finally {
+            account(Event.OPEN, file, 0, start);
+        }
+    }
+
+    /** @see FileChannel#read(ByteBuffer, long) */
+    public static int read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = System.nanoTime();
+        int n = channel.read(buffer, position);
+        account(Event.READ, "-", n, start);
+        return n;
+    }
+
+    /** @see FileChannel#write(ByteBuffer) */
+    public static int write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long start = System.nanoTime();
+        int n = channel.write(buffer);
+        account(Event.WRITE, "-", n, start);
+        return n;
+    }
+
+    /** @see FileChannel#force(boolean) */
+    public static void force(FileChannel channel, boolean metaData) throws IOException {
+        long start = System.nanoTime();
+        channel.force(metaData);
+        account(Event.WRITE, "-", 0, start);
+    }
+
+    /**
+     * Maps a region of a file; the mapped bytes are accounted as read at once, as the
+     * page faults that load them cannot be observed.
+     * @see FileChannel#map(FileChannel.MapMode, long, long)
+     */
+    public static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size)
+            throws IOException {
+        long start = System.nanoTime();
+        MappedByteBuffer map = channel.map(mode, position, size);
+        account(Event.READ, "-", size, start);
+        return map;
+    }
+
+    /**
+     * Copies bytes between channels in the kernel; accounted as one read and one write.
+     * @see FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)
+     */
+    public static long transfer(FileChannel source, long position, long count, FileChannel target)
+            throws IOException {
+        long start = System.nanoTime();
+        long n = source.transferTo(position, count, target);
+        account(Event.READ, "-", n, start);
+        account(Event.WRITE, "-", n, System.nanoTime());
+        return n;
+    }
+}
@@ -27,12 +27,17 @@
 */
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 import java.io.*;
 
 public class IntegrationModule {
 
 	public static class MainMenu {
 
+		/** Metric names of the main menu options, by option number. */
+		private static final String[] MENU_OPERATIONS = { null, "upload", "listYears", "viewYear", "deleteYear",
+				"report", "predict", "changePassword", "deleteAccount", "logout" };
+
 		private Account currentUser;
 		private AccountDAO accountDAO;
 		private AuthService authService;
@@ -107,11 +112,15 @@ public class IntegrationModule {
 								.println("Secret answer must be 2–50 characters and only letters, numbers, or spaces.");
 					}
 
-					boolean success = authService.register(username, password, secretQuestion, secretAnswer);
-					if (success) {
-						System.out.println("Account created successfully!");
-					} else {
-						System.out.println("Registration failed. Username might already exist.");
+					try {
+						boolean success = authService.register(username, password, secretQuestion, secretAnswer);
+						if (success) {
+							System.out.println("Account created successfully!");
+						} else {
+							System.out.println("Registration failed. Username might already exist.");
+						}
+					} catch (IOException e) {
+						System.out.println("Registration failed. Could not save the account: " + e.getMessage());
 					}
 
 				} else if (choice == 2) {
@@ -141,7 +150,10 @@ public class IntegrationModule {
 						System.out.println("Secret Question: " + account.getSecretQuestion());
 						System.out.print("Your Answer: ");
 						String answer = scanner.nextLine().trim();
-						authService.recoverPassword(username, answer);
+						if (authService.recoverPassword(username, answer)) {
+							authService.changePassword(account, askNewPassword(scanner));
+							System.out.println("Password successfully updated.");
+						}
 					} else {
 						System.out.println("Username not found.");
 					}
@@ -163,6 +175,7 @@ public class IntegrationModule {
 		 * and associated files 9. Logout and return to login screen
 		 */
 
+		@SuppressWarnings("try")
 		public void displayMainMenu() {
 			Scanner scanner = new Scanner(System.in);
 
@@ -189,311 +202,322 @@ public class IntegrationModule {
 					}
 				}
 
-				// Option 1: Upload or Update Income/Expense CSV
-				// Invokes Budget module to upload or overwrite CSV data for a given year.
+				// Every option is timed, prompts included, and its file I/O accounted as menu.<operation>
+				String operation = option >= 1 && option < MENU_OPERATIONS.length ? MENU_OPERATIONS[option]
+						: "invalid";
+				long started = System.nanoTime();
+				try (IOAccounting.Scope io = IOAccounting.begin("menu." + operation)) {
+					// Option 1: Upload or Update Income/Expense CSV
+					// Invokes Budget module to upload or overwrite CSV data for a given year.
 
-				if (option == 1) {
-					budget.promptToCreateOrUpdate();
-				}
-				// Option 2: List Loaded Budget Years
-				// Displays all years for which the current user has uploaded budget data.
+					if (option == 1) {
+						budget.promptToCreateOrUpdate();
+					}
+					// Option 2: List Loaded Budget Years
+					// Displays all years for which the current user has uploaded budget data.
 
-				else if (option == 2) {
-					ArrayList<Integer> years = budget.getYears();
-					if (years.isEmpty()) {
-						System.out.println("No budgets found.");
-					} else {
-						System.out.println("Loaded Budget Years:");
-						for (Integer year : years) {
-							System.out.println("- " + year);
+					else if (option == 2) {
+						ArrayList<Integer> years;
+						try {
+							years = budget.getYears();
+						} catch (IOException e) {
+							System.err.println(e.getMessage());
+							continue;
+						}
+						if (years.isEmpty()) {
+							System.out.println("No budgets found.");
+						} else {
+							System.out.println("Loaded Budget Years:");
+							for (Integer year : years) {
+								System.out.println("- " + year);
+							}
 						}
 					}
-				}
-				// Option 3: View Transactions for a Year
-				// Prompts for a year and displays the detailed transaction list for that year.
-
-				else if (option == 3) {
-					System.out.print("Enter the year to view transactions: ");
-					int year = Integer.parseInt(scanner.nextLine());
-					ArrayList<Budget.Transaction> transactions = budget.readCSV(year);
-					if (transactions == null || transactions.isEmpty()) {
-						System.out.println("No transactions found for year " + year);
-					} else {
-						System.out.println("Transactions:");
-						for (Budget.Transaction tr : transactions) {
-							System.out.printf("%02d/%02d/%04d, %s, %d\n", tr.getMonth(), tr.getDay(), tr.getYear(),
-									tr.getCategory(), tr.getAmount());
+					// Option 3: View Transactions for a Year
+					// Prompts for a year and displays the detailed transaction list for that year.
+
+					else if (option == 3) {
+						System.out.print("Enter the year to view transactions: ");
+						int year = Integer.parseInt(scanner.nextLine());
+						TransactionTable transactions = budget.readCSV(year);
+						if (transactions == null || transactions.isEmpty()) {
+							System.out.println("No transactions found for year " + year);
+						} else {
+							System.out.println("Transactions:");
+							TransactionTable.Cursor tr = transactions.cursor();
+							while (tr.next()) {
+								System.out.printf("%02d/%02d/%04d, %s, %d\n", tr.getMonth(), tr.getDay(), tr.getYear(),
+										tr.getCategory(), tr.getAmount());
+							}
 						}
 					}
-				}
-				// Option 4: Delete Budget for a Year
-				// Prompts for confirmation and deletes the specified year’s CSV data.
+					// Option 4: Delete Budget for a Year
+					// Prompts for confirmation and deletes the specified year’s CSV data.
 
-				else if (option == 4) {
-					budget.promptToDelete();
-				}
-				// Option 5: Generate Financial Report
-				// Prompts for year and generates analysis using ReportsManager.
-				// Optionally saves the report to file if user confirms.
-
-				else if (option == 5) {
-					System.out.print("Enter year to generate report: ");
-					int year = Integer.parseInt(scanner.nextLine());
-					String filePath = System.getProperty("user.dir") + "/pfm_data/" + currentUser.getUsername() + "/"
-							+ year + ".csv";
-
-					if (ValidationManager.CheckCSVFileFormat.validCSVFile(filePath)) {
-						boolean saveToFile = askYesOrNo(scanner, "Save report to a file?");
-						ReportsManager.analyzeData(currentUser, year, saveToFile);
-					} else {
-						System.out.println("No data found for year " + year);
-						System.out.println(
-								"Please upload it first using option 1 (Upload or Update Income/Expense CSV).");
-						continue;
+					else if (option == 4) {
+						budget.promptToDelete();
 					}
-
-				}
-				// Option 6: Perform What-If Budget Prediction
-				// Loads user CSV and performs analysis with PredictionManager.
-				// Allows setting spending priorities (up to 3).
-				// Simulates reducing spending in a category while respecting priorities.
-				// Only categories present in the uploaded file are allowed as input.
-
-				else if (option == 6) {
-					int year = -1;
-					while (true) {
-						System.out.print("Enter year to perform prediction: ");
-						String input = scanner.nextLine().trim();
-						try {
-							year = Integer.parseInt(input);
-							break;
-						} catch (NumberFormatException e) {
-							System.out.println("Invalid year. Please enter a valid numeric year.");
+					// Option 5: Generate Financial Report
+					// Prompts for year and generates analysis using ReportsManager.
+					// Optionally saves the report to file if user confirms.
+
+					else if (option == 5) {
+						System.out.print("Enter year to generate report: ");
+						int year = Integer.parseInt(scanner.nextLine());
+						String filePath = System.getProperty("user.dir") + "/pfm_data/" + currentUser.getUsername() + "/"
+								+ year + ".csv";
+
+						if (ValidationManager.CheckCSVFileFormat.validCSVFile(filePath)) {
+							boolean saveToFile = askYesOrNo(scanner, "Save report to a file?");
+							ReportsManager.analyzeData(currentUser, year, saveToFile);
+						} else {
+							System.out.println("No data found for year " + year);
+							System.out.println(
+									"Please upload it first using option 1 (Upload or Update Income/Expense CSV).");
+							continue;
 						}
-					}
 
-					String filePath = System.getProperty("user.dir") + "/pfm_data/" + currentUser.getUsername() + "/"
-							+ year + ".csv";
-					File file = new File(filePath);
+					}
+					// Option 6: Perform What-If Budget Prediction
+					// Loads user CSV and performs analysis with PredictionManager.
+					// Allows setting spending priorities (up to 3).
+					// Simulates reducing spending in a category while respecting priorities.
+					// Only categories present in the uploaded file are allowed as input.
+
+					else if (option == 6) {
+						int year = -1;
+						while (true) {
+							System.out.print("Enter year to perform prediction: ");
+							String input = scanner.nextLine().trim();
+							try {
+								year = Integer.parseInt(input);
+								break;
+							} catch (NumberFormatException e) {
+								System.out.println("Invalid year. Please enter a valid numeric year.");
+							}
+						}
 
-					if (!file.exists()) {
-						System.out.println("Prediction failed: No data found for year " + year);
-						System.out.println("(Please upload it first using option 1.)");
-						continue;
+						String filePath = System.getProperty("user.dir") + "/pfm_data/" + currentUser.getUsername() + "/"
+								+ year + ".csv";
+						File file = new File(filePath);
 
-					}
+						if (!file.exists()) {
+							System.out.println("Prediction failed: No data found for year " + year);
+							System.out.println("(Please upload it first using option 1.)");
+							continue;
 
-					try {
-						PredictionManager pd = new PredictionManager(filePath);
-						String status = pd.determineBudgetStatus();
-						System.out.println("\nCurrent Budget Status: " + status);
-
-						if (status.equals("surplus")) {
-							int extra = pd.determinePossibleAdditionalSpending("Any");
-							System.out.printf("You can spend an additional: $%d\n", extra);
-						} else if (status.equals("deficit")) {
-							int cut = pd.determineDecreaseForSurplus();
-							System.out.printf("You need to cut expenses by: $%d\n", cut);
-						} else {
-							System.out.println("Your budget is balanced – no prediction needed.");
 						}
 
-						Set<String> validCategoriesFromFile = new HashSet<>();
-						try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-							String line;
-							while ((line = reader.readLine()) != null) {
-								line = line.trim();
-								if (line.isEmpty() || line.toLowerCase().contains("category"))
-									continue;
-								String[] parts = line.split(",");
-								if (parts.length == 3) {
-									String category = parts[1].trim();
-									if (ValidationManager.CheckCSVContent.validCategories(category)) {
-										validCategoriesFromFile.add(category);
-									}
-								}
+						try {
+							PredictionManager pd = new PredictionManager(filePath);
+							String status = pd.determineBudgetStatus();
+							System.out.println("\nCurrent Budget Status: " + status);
+
+							if (status.equals("surplus")) {
+								int extra = pd.determinePossibleAdditionalSpending("Any");
+								System.out.printf("You can spend an additional: $%d\n", extra);
+							} else if (status.equals("deficit")) {
+								int cut = pd.determineDecreaseForSurplus();
+								System.out.printf("You need to cut expenses by: $%d\n", cut);
+							} else {
+								System.out.println("Your budget is balanced – no prediction needed.");
 							}
-						} catch (IOException e) {
-							System.out.println("Failed to re-parse CSV categories: " + e.getMessage());
-						}
-						System.out.println("\nValid categories from your file: " + validCategoriesFromFile);
 
-						pd.clearBudgetPriorities();
-						if (askYesOrNo(scanner, "Would you like to set budget priorities?")) {
-							for (int i = 1; i <= 3; i++) {
-								while (true) {
-									System.out.print("Enter priority #" + i + " category (or press ENTER to skip): ");
-									String category = scanner.nextLine().trim();
-									if (category.isEmpty())
-										break;
-									if (validCategoriesFromFile.contains(category)) {
-										pd.setBudgetPriorities(category);
-										break;
-									} else {
-										System.out.println("Invalid category. Choose one from your loaded CSV.");
-									}
+							Map<String, Long> forecast = pd.forecastNextMonthExpenses();
+							if (!forecast.isEmpty()) {
+								System.out.println("\nExpected expenses next month:");
+								for (Map.Entry<String, Long> expected : forecast.entrySet()) {
+									System.out.printf("  %-20s $%d\n", expected.getKey(), expected.getValue());
 								}
 							}
 
-							System.out.println("\nYour current budget priorities are:");
-							System.out.println("1. " + (pd.priority1 != null ? pd.priority1 : "(none)"));
-							System.out.println("2. " + (pd.priority2 != null ? pd.priority2 : "(none)"));
-							System.out.println("3. " + (pd.priority3 != null ? pd.priority3 : "(none)"));
+							List<String> validCategoriesFromFile = pd.getCategories();
+							System.out.println("\nValid categories from your file: " + validCategoriesFromFile);
 
-							if (askYesOrNo(scanner, "Would you like to change or remove any priorities?")) {
-								while (true) {
-									System.out.print("Enter a category to remove from priorities: ");
-									String remove = scanner.nextLine().trim();
-									if (validCategoriesFromFile.contains(remove)) {
-										pd.removeBudgetPriority(remove);
-										break;
-									} else {
-										System.out.println("Invalid category. Try again.");
+							pd.clearBudgetPriorities();
+							if (askYesOrNo(scanner, "Would you like to set budget priorities?")) {
+								for (int i = 1; i <= 3; i++) {
+									while (true) {
+										System.out.print("Enter priority #" + i + " category (or press ENTER to skip): ");
+										String category = scanner.nextLine().trim();
+										if (category.isEmpty())
+											break;
+										if (pd.hasCategory(category)) {
+											pd.setBudgetPriorities(category);
+											break;
+										} else {
+											System.out.println("Invalid category. Choose one from your loaded CSV.");
+										}
 									}
 								}
 
-								if (askYesOrNo(scanner, "Would you like to set a new priority in its place?")) {
+								System.out.println("\nYour current budget priorities are:");
+								System.out.println("1. " + (pd.getPriority(1) != null ? pd.getPriority(1) : "(none)"));
+								System.out.println("2. " + (pd.getPriority(2) != null ? pd.getPriority(2) : "(none)"));
+								System.out.println("3. " + (pd.getPriority(3) != null ? pd.getPriority(3) : "(none)"));
+
+								if (askYesOrNo(scanner, "Would you like to change or remove any priorities?")) {
 									while (true) {
-										System.out.print("Enter new priority category: ");
-										String newPriority = scanner.nextLine().trim();
-										if (validCategoriesFromFile.contains(newPriority)) {
-											pd.setBudgetPriorities(newPriority);
+										System.out.print("Enter a category to remove from priorities: ");
+										String remove = scanner.nextLine().trim();
+										if (pd.hasCategory(remove)) {
+											pd.removeBudgetPriority(remove);
 											break;
 										} else {
 											System.out.println("Invalid category. Try again.");
 										}
 									}
-								}
 
-								System.out.println("\nUpdated budget priorities:");
-								System.out.println("1. " + (pd.priority1 != null ? pd.priority1 : "(none)"));
-								System.out.println("2. " + (pd.priority2 != null ? pd.priority2 : "(none)"));
-								System.out.println("3. " + (pd.priority3 != null ? pd.priority3 : "(none)"));
-							}
-						}
+									if (askYesOrNo(scanner, "Would you like to set a new priority in its place?")) {
+										while (true) {
+											System.out.print("Enter new priority category: ");
+											String newPriority = scanner.nextLine().trim();
+											if (pd.hasCategory(newPriority)) {
+												pd.setBudgetPriorities(newPriority);
+												break;
+											} else {
+												System.out.println("Invalid category. Try again.");
+											}
+										}
+									}
 
-						while (askYesOrNo(scanner, "Would you like to simulate modifying spending for a category?")) {
-							String category;
-							while (true) {
-								System.out.print("Enter category to modify (case-sensitive): ");
-								category = scanner.nextLine().trim();
-								if (validCategoriesFromFile.contains(category))
-									break;
-								System.out.println("Invalid category. Try again.");
+									System.out.println("\nUpdated budget priorities:");
+									System.out.println("1. " + (pd.getPriority(1) != null ? pd.getPriority(1) : "(none)"));
+									System.out.println("2. " + (pd.getPriority(2) != null ? pd.getPriority(2) : "(none)"));
+									System.out.println("3. " + (pd.getPriority(3) != null ? pd.getPriority(3) : "(none)"));
+								}
 							}
 
-							int amount = 0;
-							while (true) {
-								System.out.print("Enter adjustment amount in dollars (e.g., 200 to reduce): ");
-								try {
-									amount = Integer.parseInt(scanner.nextLine().trim());
-									if (amount <= 0)
-										throw new NumberFormatException();
-									break;
-								} catch (NumberFormatException e) {
-									System.out.println("Invalid amount. Enter a positive number.");
+							while (askYesOrNo(scanner, "Would you like to simulate modifying spending for a category?")) {
+								String category;
+								while (true) {
+									System.out.print("Enter category to modify (case-sensitive): ");
+									category = scanner.nextLine().trim();
+									if (pd.hasCategory(category))
+										break;
+									System.out.println("Invalid category. Try again.");
 								}
-							}
 
-							int oldExpenses = pd.getTotalExpenses();
-							pd.modifySpending(category, amount);
-							int newExpenses = pd.getTotalExpenses();
+								int amount = 0;
+								while (true) {
+									System.out.print("Enter adjustment amount in dollars (e.g., 200 to reduce): ");
+									try {
+										amount = Integer.parseInt(scanner.nextLine().trim());
+										if (amount <= 0)
+											throw new NumberFormatException();
+										break;
+									} catch (NumberFormatException e) {
+										System.out.println("Invalid amount. Enter a positive number.");
+									}
+								}
+
+								int oldExpenses = pd.getTotalExpenses();
+								pd.modifySpending(category, amount);
+								int newExpenses = pd.getTotalExpenses();
 
-							if (oldExpenses == newExpenses) {
-								if (!askYesOrNo(scanner, "Would you like to try a different category?"))
+								if (oldExpenses == newExpenses) {
+									if (!askYesOrNo(scanner, "Would you like to try a different category?"))
+										break;
+								} else {
 									break;
-							} else {
-								break;
+								}
 							}
-						}
 
-					} catch (IOException e) {
-						System.out.println("Failed to run prediction due to a system error.");
-						System.out.println("Details: " + e.getMessage());
-					} catch (IllegalArgumentException e) {
-						System.out.println("Data validation error: " + e.getMessage());
-					}
-				}
-				// Option 7: Change Password
-				// Allows password change using either current password or secret question.
-
-				else if (option == 7) {
-					System.out.println("Choose method:");
-					System.out.println("1. I know my current password");
-					System.out.println("2. I forgot my password but can answer my secret question");
-					System.out.print("Select option: ");
-					String method = scanner.nextLine().trim();
-
-					if (method.equals("1")) {
-						System.out.print("Enter your current password: ");
-						String currentPassword = scanner.nextLine().trim();
-
-						if (currentUser.getPassword().equals(currentPassword)) {
-							System.out.print("Enter your new password: ");
-							String newPassword = scanner.nextLine().trim();
-
-							currentUser.setPassword(newPassword);
-							accountDAO.updateAccount(currentUser);
-							System.out.println("Password successfully updated.");
-						} else {
-							System.out.println("Incorrect current password. Password not changed.");
+						} catch (IOException e) {
+							System.out.println("Failed to run prediction due to a system error.");
+							System.out.println("Details: " + e.getMessage());
+						} catch (IllegalArgumentException e) {
+							System.out.println("Data validation error: " + e.getMessage());
 						}
+					}
+					// Option 7: Change Password
+					// Allows password change using either current password or secret question.
 
-					} else if (method.equals("2")) {
-						System.out.println("Secret Question: " + currentUser.getSecretQuestion());
-						System.out.print("Your Answer: ");
-						String answer = scanner.nextLine().trim();
+					else if (option == 7) {
+						System.out.println("Choose method:");
+						System.out.println("1. I know my current password");
+						System.out.println("2. I forgot my password but can answer my secret question");
+						System.out.print("Select option: ");
+						String method = scanner.nextLine().trim();
 
-						if (currentUser.getSecretAnswer().equalsIgnoreCase(answer)) {
-							System.out.print("Enter your new password: ");
-							String newPassword = scanner.nextLine().trim();
+						if (method.equals("1")) {
+							System.out.print("Enter your current password: ");
+							String currentPassword = scanner.nextLine().trim();
 
-							currentUser.setPassword(newPassword);
-							accountDAO.updateAccount(currentUser);
-							System.out.println("Password successfully updated.");
+							if (authService.verifyPassword(currentUser, currentPassword)) {
+								String newPassword = askNewPassword(scanner);
+
+								authService.changePassword(currentUser, newPassword);
+								System.out.println("Password successfully updated.");
+							} else {
+								System.out.println("Incorrect current password. Password not changed.");
+							}
 
+						} else if (method.equals("2")) {
+							System.out.println("Secret Question: " + currentUser.getSecretQuestion());
+							System.out.print("Your Answer: ");
+							String answer = scanner.nextLine().trim();
+
+							if (currentUser.getSecretAnswer().equalsIgnoreCase(answer)) {
+								String newPassword = askNewPassword(scanner);
+
+								authService.changePassword(currentUser, newPassword);
+								System.out.println("Password successfully updated.");
+
+							} else {
+								System.out.println("Incorrect answer. Password not changed.");
+							}
 						} else {
-							System.out.println("Incorrect answer. Password not changed.");
+							System.out.println("Invalid selection.");
 						}
-					} else {
-						System.out.println("Invalid selection.");
 					}
-				}
-				// Option 8: Delete My Account
-				// Confirms deletion, then removes user record and all associated CSV files.
-
-				else if (option == 8) {
-					boolean confirm = askYesOrNo(scanner, "Are you sure you want to delete your account?");
-					if (confirm) {
-
-						String userDirPath = System.getProperty("user.dir") + "/pfm_data/" + currentUser.getUsername();
-						File userDir = new File(userDirPath);
-						if (userDir.exists() && userDir.isDirectory()) {
-							for (File file : userDir.listFiles()) {
-								if (!file.delete()) {
-									System.out.println("Failed to delete file: " + file.getName());
+					// Option 8: Delete My Account
+					// Confirms deletion, then removes user record and all associated CSV files.
+
+					else if (option == 8) {
+						boolean confirm = askYesOrNo(scanner, "Are you sure you want to delete your account?");
+						if (confirm) {
+
+							String userDirPath = System.getProperty("user.dir") + "/pfm_data/" + currentUser.getUsername();
+							File userDir = new File(userDirPath);
+							Lock lock = UserLocks.shared().forDirectory(userDir).writeLock();
+							lock.lock();
+							try {
+								if (userDir.exists() && userDir.isDirectory()) {
+									for (File file : userDir.listFiles()) {
+										if (!file.delete()) {
+											System.out.println("Failed to delete file: " + file.getName());
+										}
+									}
+								}
+								if (!userDir.delete()) {
+									System.out.println("Failed to delete user folder: " + userDirPath);
 								}
+								// A new account with the same username must not see this one's data
+								ParsedYearCache.shared().invalidateDirectory(userDir);
+								CategoryDictionary.forget(userDir);
+							} finally {
+								lock.unlock();
 							}
-						}
-						if (!userDir.delete()) {
-							System.out.println("Failed to delete user folder: " + userDirPath);
-						}
 
-						accountDAO.deleteAccount(currentUser.getId());
-						System.out.println("Your account has been deleted.");
-						System.out.println("Goodbye, " + currentUser.getUsername() + "!");
-						displayLoginMenu();
+							accountDAO.deleteAccount(currentUser.getId());
+							System.out.println("Your account has been deleted.");
+							System.out.println("Goodbye, " + currentUser.getUsername() + "!");
+							displayLoginMenu();
+						}
 					}
-				}
 
-				// Option 9: Logout
-				// Logs the user out and returns to the login menu.
+					// Option 9: Logout
+					// Logs the user out and returns to the login menu.
 
-				else if (option == 9) {
-					logoutUser();
-					break;
-				} else {
-					System.out.println("Invalid option. Please try again.");
+					else if (option == 9) {
+						logoutUser();
+						break;
+					} else {
+						System.out.println("Invalid option. Please try again.");
+					}
+				} finally {
+					Metrics.shared().record("menu." + operation, started);
 				}
 			}
 		}
@@ -533,13 +557,47 @@ public class IntegrationModule {
 			}
 		}
 
+		/**
+		 * Utility method to prompt for a new password until it meets the same rules as
+		 * at registration.
+		 *
+		 * @param scanner Scanner instance for user input
+		 * @return the accepted password
+		 */
+
+		private static String askNewPassword(Scanner scanner) {
+			while (true) {
+				System.out.print("Enter your new password: ");
+				String password = scanner.nextLine().trim();
+				if (ValidationManager.UserCredentialValueLimiter.restrictPasswordValues(password))
+					return password;
+				System.out.println(
+						"Password must be at least 8 characters, and include upper, lower, number, and special char.");
+			}
+		}
+
 	}
 
 	/**
-	 * Entry point for the application. Initializes and starts the login menu.
+	 * Entry point for the application. Initializes and starts the login menu, or
+	 * with {@code --batch-reports [parallelism]} generates every user's reports, or
+	 * with {@code --batch <script>} runs a {@link BatchCommandDriver} script, or
+	 * with {@code --serve [port]} starts the local {@link ApiServer}.
 	 */
 
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("--batch-reports")) {
+			BatchReports.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--batch")) {
+			BatchCommandDriver.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--serve")) {
+			ApiServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		MainMenu menu = new MainMenu();
 		menu.displayLoginMenu();
 	}
@@ -0,0 +1,106 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, with log-linear buckets in the
+ * style of HdrHistogram: values below 32 ns have a bucket each, and every power of two
+ * above is split into 32 buckets, so a recorded value is known to within about 3%
+ * whatever its magnitude. Recording is a few atomic increments and never allocates,
+ * so it is cheap enough for every call of a hot path and safe from any thread.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency.
+     * @param nanos the latency in nanoseconds; negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** @return the largest value that falls in a bucket. */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    /** @return the number of recorded values. */
+    public long count() {
+        return count.sum();
+    }
+
+    /** @return the sum of recorded values, in nanoseconds. */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /** @return the mean of recorded values in nanoseconds, or 0 if there are none. */
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum() / n;
+    }
+
+    /** @return the largest recorded value, in nanoseconds. */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile the percentile (0-100).
+     * @return the value that the given share of recorded values do not exceed, to
+     *         within one bucket, in nanoseconds; 0 if nothing was recorded.
+     */
+    public long percentile(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            snapshot[b] = counts.get(b);
+            n += snapshot[b];
+        }
+        if (n == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += snapshot[b];
+            if (seen >= target) return Math.min(upperBound(b), max());
+        }
+        return max();
+    }
+
+    /**
+     * Adds every value recorded by another histogram to this one.
+     * @param other the histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int b = 0; b < BUCKETS; b++) {
+            long c = other.counts.get(b);
+            if (c != 0) counts.addAndGet(b, c);
+        }
+        count.add(other.count());
+        sum.add(other.sum());
+        max.accumulateAndGet(other.max(), Math::max);
+    }
+}
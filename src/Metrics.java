@@ -0,0 +1,254 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Registry of named counters, gauges and latency timers, so that production can show
+ * where time goes without attaching a profiler. Counters are {@link LongAdder}s,
+ * timers are {@link LatencyHistogram}s and gauges are read when exported, so recording
+ * never takes a lock.
+ *
+ * <p>The values are exported as a flat map of numbers: a counter or gauge under its
+ * own name, and a timer {@code t} as {@code t.count}, {@code t.mean_ms},
+ * {@code t.p50_ms}, {@code t.p99_ms}, {@code t.p999_ms} and {@code t.max_ms}. The
+ * shared registry publishes that map as the attributes of the JMX MBean
+ * {@code pfm:type=Metrics}, and, if the {@code pfm.metrics.file} system property is
+ * set, writes it to that file as {@code name=value} lines every
+ * {@code pfm.metrics.interval} seconds (default 60) and on exit.</p>
+ *
+ * <p>Timers measure from a {@link System#nanoTime()} start to {@link #record}; a
+ * failed operation is also counted in {@code <timer>.failures}.</p>
+ */
+public final class Metrics {
+
+    /** Name of the MBean the shared registry is published as. */
+    public static final String OBJECT_NAME = "pfm:type=Metrics";
+
+    /** Default number of seconds between two dumps of the shared registry. */
+    public static final long DEFAULT_DUMP_INTERVAL = 60;
+
+    private static final Metrics SHARED = new Metrics();
+
+    static {
+        SHARED.register(OBJECT_NAME);
+        String file = System.getProperty("pfm.metrics.file");
+        if (file != null && !file.isEmpty()) {
+            SHARED.dumpPeriodically(new File(file), Long.getLong("pfm.metrics.interval", DEFAULT_DUMP_INTERVAL));
+        }
+    }
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+
+    /** @return the registry shared by the whole process. */
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param name the counter's name.
+     * @return the counter, created at 0 on first use.
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Increments a counter.
+     * @param name the counter's name.
+     */
+    public void count(String name) {
+        counter(name).increment();
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge of the same name.
+     * @param name the gauge's name.
+     * @param value read each time the metrics are exported; must be thread-safe.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * @param name the timer's name.
+     * @return the timer, created empty on first use.
+     */
+    public LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Records the time since a start into a timer.
+     * @param name the timer's name.
+     * @param startNanos the {@link System#nanoTime()} the operation started at.
+     */
+    public void record(String name, long startNanos) {
+        timer(name).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the time since a start into a timer, and counts the operation in
+     * {@code <name>.failures} if it failed.
+     * @param name the timer's name.
+     * @param startNanos the {@link System#nanoTime()} the operation started at.
+     * @param succeeded false if the operation failed.
+     */
+    public void record(String name, long startNanos, boolean succeeded) {
+        record(name, startNanos);
+        if (!succeeded) count(name + ".failures");
+    }
+
+    /** @return the current value of every metric, by name. */
+    public SortedMap<String, Number> snapshot() {
+        SortedMap<String, Number> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> {
+            try {
+                values.put(name, gauge.getAsLong());
+            } catch (RuntimeException e) {
+                // A failing gauge must not hide the others
+            }
+        });
+        timers.forEach((name, timer) -> {
+            values.put(name + ".count", timer.count());
+            values.put(name + ".mean_ms", timer.mean() / 1e6);
+            values.put(name + ".p50_ms", timer.percentile(50) / 1e6);
+            values.put(name + ".p99_ms", timer.percentile(99) / 1e6);
+            values.put(name + ".p999_ms", timer.percentile(99.9) / 1e6);
+            values.put(name + ".max_ms", timer.max() / 1e6);
+        });
+        return values;
+    }
+
+    /**
+     * Writes a snapshot to a file as {@code name=value} lines, replacing the file
+     * atomically so that readers never see a partial dump.
+     * @param file the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void dump(File file) throws IOException {
+        StringBuilder text = new StringBuilder("# ").append(Instant.now()).append('\n');
+        for (Map.Entry<String, Number> value : snapshot().entrySet()) {
+            text.append(value.getKey()).append('=').append(value.getValue()).append('\n');
+        }
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + AtomicFiles.TEMP_SUFFIX);
+        Files.write(temp, text.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Dumps the metrics to a file on a daemon thread every interval, and once more when
+     * the process exits.
+     * @param file the file to write.
+     * @param seconds the interval between two dumps.
+     */
+    public void dumpPeriodically(File file, long seconds) {
+        Runnable task = () -> {
+            try {
+                dump(file);
+            } catch (IOException e) {
+                System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pfm-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, seconds);
+        scheduler.scheduleAtFixedRate(task, interval, interval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(task, "pfm-metrics-final-dump"));
+    }
+
+    /**
+     * Publishes the metrics in the platform MBean server. Failures are reported on
+     * {@code System.err} only, as metrics must never stop the application.
+     * @param objectName the name to publish under.
+     */
+    public void register(String objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), new ObjectName(objectName));
+        } catch (JMException | RuntimeException e) {
+            System.err.println("Could not publish metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read-only MBean with one attribute per exported value; the attributes follow the
+     * metrics as they are created.
+     */
+    private final class MBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Number value = snapshot().get(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            SortedMap<String, Number> values = snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Number value = values.get(attribute);
+                if (value != null) list.add(new Attribute(attribute, value));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Number> value : snapshot().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(),
+                        value.getKey(), true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Personal Finance Manager metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Monte Carlo forecast of a user's savings over the next one to ten years, as an
+ * alternative to the linear {@code annualSavings * n} projection of
+ * {@link PredictionManager}.
+ *
+ * <p>Every month of every loaded year that has transactions is one observation. A
+ * simulated month draws, independently for each category, the net amount (income minus
+ * expenses) of that category in a randomly chosen observed month; the month's savings
+ * are their sum. Each path simulates {@link #HORIZON} years of months and records its
+ * cumulative savings at the end of every year.</p>
+ *
+ * <p>Paths are run in fixed-size chunks on a fork-join pool. Each chunk has its own
+ * {@link SplittableRandom}, split from the seed in chunk order before any chunk runs,
+ * so a forecast depends only on the data, the seed and the number of paths, not on the
+ * number of threads. Results are collected in fixed-range histograms, so memory does
+ * not grow with the number of paths; percentiles are accurate to one bin, at most
+ * {@code 1/}{@link #BINS} of the possible range of a horizon.</p>
+ */
+public final class MonteCarloForecaster {
+
+    /** Number of years forecast. */
+    public static final int HORIZON = 10;
+    /** Number of histogram bins per year of the horizon. */
+    public static final int BINS = 1 << 14;
+
+    private static final int CHUNK_PATHS = 64 * 1024;
+
+    // flows[category][observation]: net amount of a category in one observed month
+    private final long[][] flows;
+    private final int observations;
+    private final long minMonth;
+    private final long maxMonth;
+
+    /**
+     * Loads the observations of a user's years.
+     * @param userDirectory the {@code pfm_data/<user>} directory.
+     * @param years the years to learn from, e.g. {@link Budget#getYears()}.
+     * @throws IOException if a year file cannot be read.
+     * @throws IllegalArgumentException if the years have no transactions.
+     */
+    public MonteCarloForecaster(File userDirectory, List<Integer> years) throws IOException {
+        List<YearCube> cubes = new ArrayList<>();
+        int width = 0;
+        int months = 0;
+        for (int year : years) {
+            YearCube cube = ParsedYearCache.shared().cube(new File(userDirectory, year + ".csv"), year);
+            cubes.add(cube);
+            width = Math.max(width, cube.categoryCount());
+            for (int m = 1; m <= 12; m++) {
+                if (active(cube, m)) months++;
+            }
+        }
+        if (months == 0) {
+            throw new IllegalArgumentException("No transactions to forecast from.");
+        }
+
+        flows = new long[width][months];
+        int observation = 0;
+        for (YearCube cube : cubes) {
+            for (int m = 1; m <= 12; m++) {
+                if (!active(cube, m)) continue;
+                for (int c = 0; c < cube.categoryCount(); c++) {
+                    flows[c][observation] = cube.income(m, c) - cube.expenses(m, c);
+                }
+                observation++;
+            }
+        }
+        observations = months;
+
+        long min = 0;
+        long max = 0;
+        for (long[] category : flows) {
+            long low = Long.MAX_VALUE;
+            long high = Long.MIN_VALUE;
+            for (long flow : category) {
+                low = Math.min(low, flow);
+                high = Math.max(high, flow);
+            }
+            min += low;
+            max += high;
+        }
+        minMonth = min;
+        maxMonth = max;
+    }
+
+    /**
+     * Loads the observations of every year of a budget.
+     * @param budget the user's budget.
+     * @return the forecaster.
+     * @throws IOException if a year file cannot be read.
+     */
+    public static MonteCarloForecaster forBudget(Budget budget) throws IOException {
+        List<Integer> years = budget.getYears();
+        return new MonteCarloForecaster(budget.getUserDataDir(), years);
+    }
+
+    private static boolean active(YearCube cube, int month) {
+        for (int c = 0; c < cube.categoryCount(); c++) {
+            if (cube.incomeCount(month, c) > 0 || cube.expenseCount(month, c) > 0) return true;
+        }
+        return false;
+    }
+
+    /** @return the number of observed months the forecast draws from. */
+    public int getObservations() {
+        return observations;
+    }
+
+    /**
+     * Runs a forecast.
+     * @param paths the number of simulated paths.
+     * @param seed the seed; the same seed gives the same forecast.
+     * @param parallelism the number of worker threads.
+     * @return the forecast.
+     */
+    public Forecast run(long paths, long seed, int parallelism) {
+        if (paths < 1) throw new IllegalArgumentException("At least one path is required");
+
+        int chunks = (int) ((paths + CHUNK_PATHS - 1) / CHUNK_PATHS);
+        SplittableRandom root = new SplittableRandom(seed);
+        List<Chunk> work = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            long start = (long) i * CHUNK_PATHS;
+            work.add(new Chunk(root.split(), (int) Math.min(CHUNK_PATHS, paths - start)));
+        }
+
+        Forecast forecast = new Forecast(paths, minMonth, maxMonth);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // Histogram counts and sums are integers, so the merge order does not matter
+            List<Future<?>> futures = new ArrayList<>(chunks);
+            for (Chunk chunk : work) futures.add(pool.submit(() -> forecast.merge(chunk.simulate())));
+            for (Future<?> future : futures) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Forecast interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Forecast failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return forecast;
+    }
+
+    /**
+     * A run of consecutive paths with its own random stream.
+     */
+    private final class Chunk {
+        private final SplittableRandom random;
+        private final int paths;
+
+        Chunk(SplittableRandom random, int paths) {
+            this.random = random;
+            this.paths = paths;
+        }
+
+        Forecast simulate() {
+            Forecast partial = new Forecast(paths, minMonth, maxMonth);
+            for (int p = 0; p < paths; p++) {
+                long savings = 0;
+                for (int year = 1; year <= HORIZON; year++) {
+                    for (int month = 0; month < 12; month++) {
+                        for (long[] category : flows) savings += category[random.nextInt(observations)];
+                    }
+                    partial.record(year, savings);
+                }
+            }
+            return partial;
+        }
+    }
+
+    /**
+     * Distribution of cumulative savings at the end of each forecast year.
+     */
+    public static final class Forecast {
+        private final long paths;
+        private final long minMonth;
+        private final long maxMonth;
+        private final long[][] histograms = new long[HORIZON][];
+        private final long[] sums = new long[HORIZON];
+
+        private Forecast(long paths, long minMonth, long maxMonth) {
+            this.paths = paths;
+            this.minMonth = minMonth;
+            this.maxMonth = maxMonth;
+            for (int y = 0; y < HORIZON; y++) histograms[y] = new long[BINS];
+        }
+
+        private double low(int years) { return (double) minMonth * 12 * years; }
+        private double binWidth(int years) { return Math.max(1e-9, ((double) maxMonth - minMonth) * 12 * years / BINS); }
+
+        private void record(int years, long savings) {
+            int bin = (int) ((savings - low(years)) / binWidth(years));
+            histograms[years - 1][Math.max(0, Math.min(BINS - 1, bin))]++;
+            sums[years - 1] += savings;
+        }
+
+        private synchronized void merge(Forecast other) {
+            for (int y = 0; y < HORIZON; y++) {
+                long[] into = histograms[y];
+                long[] from = other.histograms[y];
+                for (int b = 0; b < BINS; b++) into[b] += from[b];
+                sums[y] += other.sums[y];
+            }
+        }
+
+        /** @return the number of simulated paths. */
+        public long getPaths() { return paths; }
+
+        /**
+         * @param years the horizon (1-10).
+         * @return the mean cumulative savings after that many years.
+         */
+        public double mean(int years) {
+            return (double) sums[check(years) - 1] / paths;
+        }
+
+        /**
+         * @param years the horizon (1-10).
+         * @param percentile the percentile (0-100).
+         * @return the cumulative savings that the given share of paths stay below.
+         */
+        public synchronized double percentile(int years, double percentile) {
+            long[] histogram = histograms[check(years) - 1];
+            long target = (long) Math.ceil(percentile / 100 * paths);
+            long seen = 0;
+            for (int b = 0; b < BINS; b++) {
+                seen += histogram[b];
+                if (seen >= Math.max(1, target)) return low(years) + (b + 0.5) * binWidth(years);
+            }
+            return low(years) + BINS * binWidth(years);
+        }
+
+        private static int check(int years) {
+            if (years < 1 || years > HORIZON) throw new IllegalArgumentException("Years must be 1-" + HORIZON);
+            return years;
+        }
+    }
+
+    /**
+     * Forecasts the savings of one user and prints percentile bands.
+     * @param args the {@code pfm_data/<user>} directory, then optionally the number of
+     *        paths (default 1000000) and the seed (default 1).
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: MonteCarloForecaster <user directory> [paths] [seed]");
+            return;
+        }
+        try {
+            File userDirectory = new File(args[0]);
+            long paths = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+            long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+            int parallelism = Integer.getInteger("pfm.forecast.parallelism", Runtime.getRuntime().availableProcessors());
+
+            List<Integer> years = new ArrayList<>();
+            File[] files = userDirectory.listFiles((dir, name) -> name.matches("\\d{4}\\.csv"));
+            if (files != null) {
+                for (File file : files) years.add(Integer.parseInt(file.getName().substring(0, 4)));
+            }
+
+            MonteCarloForecaster forecaster = new MonteCarloForecaster(userDirectory, years);
+            long start = System.nanoTime();
+            Forecast forecast = forecaster.run(paths, seed, parallelism);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%-5s | %-12s | %-12s | %-12s | %-12s | %-12s%n", "Years", "5%", "25%", "Median", "75%", "95%");
+            for (int y = 1; y <= HORIZON; y++) {
+                System.out.printf("%-5d | %-12.0f | %-12.0f | %-12.0f | %-12.0f | %-12.0f%n", y,
+                        forecast.percentile(y, 5), forecast.percentile(y, 25), forecast.percentile(y, 50),
+                        forecast.percentile(y, 75), forecast.percentile(y, 95));
+            }
+            System.out.printf("%d paths from %d observed months, seed %d, %d threads, %.1f ms%n",
+                    paths, forecaster.getObservations(), seed, parallelism, elapsed / 1e6);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Forecast failed: " + e.getMessage());
+        }
+    }
+}
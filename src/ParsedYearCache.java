@@ -0,0 +1,291 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process cache of parsed year files, shared by {@link Budget}, {@link ReportsManager}
+ * and {@link PredictionManager} so that repeated operations on the same year read it
+ * from disk once.
+ *
+ * <p>Entries are keyed by the year file's path, which names the user and the year, and
+ * are stamped with the file's length and modification time; an entry whose file has
+ * changed since is dropped and read again. Each entry holds the transactions and/or
+ * the month x category totals of its year, whichever has been asked for.</p>
+ *
+ * <p>The cache is bounded by the number of transaction rows it holds and evicts the
+ * least recently used years first. The bound defaults to the
+ * {@code pfm.cache.maxRows} system property.</p>
+ *
+ * <p>Reads hold the {@link UserLocks} read lock of the file's user, so a file is never
+ * stamped or parsed while a writer is replacing it. Writers call {@link #put} and
+ * {@link #invalidate} under the write lock.</p>
+ */
+public final class ParsedYearCache {
+
+    /** Default maximum number of rows held by the shared cache. */
+    public static final long DEFAULT_MAX_ROWS = 2_000_000;
+
+    private static final ParsedYearCache SHARED =
+            new ParsedYearCache(Long.getLong("pfm.cache.maxRows", DEFAULT_MAX_ROWS));
+
+    static {
+        Metrics metrics = Metrics.shared();
+        metrics.gauge("cache.hits", SHARED::hits);
+        metrics.gauge("cache.misses", SHARED::misses);
+        metrics.gauge("cache.evictions", SHARED::evictions);
+        metrics.gauge("cache.years", SHARED::size);
+        metrics.gauge("cache.rows", SHARED::rows);
+    }
+
+    /**
+     * The cached data of one year file.
+     */
+    private static final class Entry {
+        final long length;
+        final long lastModified;
+        final int year;
+        TransactionTable table;
+        int invalidRows;
+        YearCube cube;
+        long counted; // rows counted against the bound, guarded by the cache
+
+        Entry(long length, long lastModified, int year) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.year = year;
+        }
+
+        /** Rows counted against the bound; a cube alone counts as one. */
+        long weight() {
+            return table != null ? Math.max(1, table.size()) : 1;
+        }
+    }
+
+    private final long maxRows;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long rows;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs an empty cache.
+     * @param maxRows the maximum number of transaction rows held.
+     */
+    public ParsedYearCache(long maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    /** @return the cache shared by the whole process. */
+    public static ParsedYearCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the transactions of a year file, reading it only if it is not cached or
+     * has changed.
+     * @param csv the year file.
+     * @param year the year every row must belong to.
+     * @return the valid rows of the file; see {@link #invalidRows(File, int)} for the others.
+     * @throws IOException if the file cannot be read.
+     */
+    public TransactionTable table(File csv, int year) throws IOException {
+        Lock lock = UserLocks.shared().forFile(csv).readLock();
+        lock.lock();
+        try {
+            return load(csv, year);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TransactionTable load(File csv, int year) throws IOException {
+        Entry entry = entry(csv, year);
+        synchronized (entry) {
+            if (entry.table != null) {
+                hits.increment();
+                return entry.table;
+            }
+            misses.increment();
+            ColumnarYearFile columns = ColumnarYearFile.openOrBuild(csv, year);
+            entry.table = columns.toTable();
+            entry.invalidRows = columns.invalidRows();
+        }
+        resized(csv, entry);
+        return entry.table;
+    }
+
+    /**
+     * Returns the number of invalid lines of a year file.
+     * @param csv the year file.
+     * @param year the year every row must belong to.
+     * @return the number of lines that failed validation.
+     * @throws IOException if the file cannot be read.
+     */
+    public int invalidRows(File csv, int year) throws IOException {
+        Lock lock = UserLocks.shared().forFile(csv).readLock();
+        lock.lock();
+        try {
+            Entry entry = entry(csv, year);
+            synchronized (entry) {
+                if (entry.table != null) return entry.invalidRows;
+            }
+            return loadCube(csv, year).invalidRows();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the month x category totals of a year file, computing them from the
+     * cached transactions if those are present.
+     * @param csv the year file.
+     * @param year the year every row must belong to.
+     * @return the totals of the year.
+     * @throws IOException if the file cannot be read.
+     */
+    public YearCube cube(File csv, int year) throws IOException {
+        Lock lock = UserLocks.shared().forFile(csv).readLock();
+        lock.lock();
+        try {
+            return loadCube(csv, year);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private YearCube loadCube(File csv, int year) throws IOException {
+        Entry entry = entry(csv, year);
+        synchronized (entry) {
+            if (entry.cube != null) {
+                hits.increment();
+                return entry.cube;
+            }
+            if (entry.table != null) {
+                hits.increment();
+                entry.cube = YearCube.build(year, entry.table, entry.invalidRows);
+            } else {
+                misses.increment();
+                entry.cube = YearCube.openOrBuild(csv, year);
+            }
+            return entry.cube;
+        }
+    }
+
+    /**
+     * Caches the data of a year file that has just been written.
+     * @param csv the year file, already written.
+     * @param year the year of the file.
+     * @param table the valid rows of the file.
+     * @param invalidRows the number of lines that failed validation.
+     */
+    public void put(File csv, int year, TransactionTable table, int invalidRows) {
+        Entry entry = new Entry(IOAccounting.length(csv), IOAccounting.lastModified(csv), year);
+        entry.table = table;
+        entry.invalidRows = invalidRows;
+        synchronized (this) {
+            Entry old = entries.put(key(csv), entry);
+            if (old != null) rows -= old.counted;
+            entry.counted = entry.weight();
+            rows += entry.counted;
+            evict();
+        }
+    }
+
+    /**
+     * Drops the data of a year file, e.g. after it is deleted.
+     * @param csv the year file.
+     */
+    public synchronized void invalidate(File csv) {
+        Entry old = entries.remove(key(csv));
+        if (old != null) rows -= old.counted;
+    }
+
+    /**
+     * Drops the data of every year file in a directory, e.g. after the directory is
+     * deleted.
+     * @param directory the user directory.
+     */
+    public synchronized void invalidateDirectory(File directory) {
+        String prefix = directory.getAbsolutePath() + File.separator;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> entry = it.next();
+            if (entry.getKey().startsWith(prefix)) {
+                it.remove();
+                rows -= entry.getValue().counted;
+            }
+        }
+    }
+
+    /** Drops every entry. */
+    public synchronized void clear() {
+        entries.clear();
+        rows = 0;
+    }
+
+    /** @return the number of requests answered from memory. */
+    public long hits() { return hits.sum(); }
+    /** @return the number of requests that had to read from disk. */
+    public long misses() { return misses.sum(); }
+    /** @return the number of years evicted to respect the bound. */
+    public long evictions() { return evictions.sum(); }
+    /** @return the number of years cached. */
+    public synchronized int size() { return entries.size(); }
+    /** @return the number of rows cached. */
+    public synchronized long rows() { return rows; }
+
+    @Override
+    public String toString() {
+        return "ParsedYearCache{years=" + size() + ", rows=" + rows() + ", hits=" + hits()
+                + ", misses=" + misses() + ", evictions=" + evictions() + "}";
+    }
+
+    /**
+     * Returns the entry of a file, replacing it if the file changed since it was cached.
+     */
+    private synchronized Entry entry(File csv, int year) {
+        String key = key(csv);
+        long length = IOAccounting.length(csv);
+        long lastModified = IOAccounting.lastModified(csv);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.length == length && entry.lastModified == lastModified && entry.year == year) {
+            return entry;
+        }
+        if (entry != null) rows -= entry.counted;
+        entry = new Entry(length, lastModified, year);
+        entry.counted = 1;
+        entries.put(key, entry);
+        rows += entry.counted;
+        return entry;
+    }
+
+    /** Accounts for rows loaded into an entry after it was added. */
+    private synchronized void resized(File csv, Entry entry) {
+        if (entries.get(key(csv)) != entry) return; // replaced or evicted meanwhile
+        long weight = entry.weight();
+        rows += weight - entry.counted;
+        entry.counted = weight;
+        evict();
+    }
+
+    /** Evicts least recently used entries until the bound holds; keeps at least one. */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (rows > maxRows && entries.size() > 1 && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            rows -= eldest.counted;
+            evictions.increment();
+        }
+    }
+
+    private static String key(File csv) {
+        return csv.getAbsolutePath();
+    }
+}
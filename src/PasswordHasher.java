@@ -0,0 +1,167 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2 password hashing, run on a bounded pool of worker threads so that
+ * slow hashes never pile up unbounded work. Stored hashes look like
+ * {@code pbkdf2$<iterations>$<salt>$<hash>} (Base64 salt and hash); anything else is
+ * treated as a legacy plaintext password.
+ *
+ * <p>The work factor and pool size default to the system properties
+ * {@code pfm.password.iterations} and {@code pfm.password.threads}.</p>
+ */
+final class PasswordHasher {
+
+    /** Default PBKDF2 iteration count. */
+    static final int DEFAULT_ITERATIONS = 120_000;
+
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static volatile PasswordHasher shared;
+
+    private final int iterations;
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * Constructs a hasher with its own worker pool.
+     * @param iterations the PBKDF2 iteration count for new hashes.
+     * @param threads the number of worker threads.
+     * @param queueCapacity how many requests may wait for a worker; when full, the
+     *        caller runs the hash itself, which throttles it.
+     */
+    PasswordHasher(int iterations, int threads, int queueCapacity) {
+        this.iterations = iterations;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the process-wide hasher, configured from system properties.
+     * @return the shared hasher.
+     */
+    static PasswordHasher shared() {
+        if (shared == null) {
+            synchronized (PasswordHasher.class) {
+                if (shared == null) {
+                    int threads = Integer.getInteger("pfm.password.threads", Runtime.getRuntime().availableProcessors());
+                    shared = new PasswordHasher(Integer.getInteger("pfm.password.iterations", DEFAULT_ITERATIONS),
+                            threads, threads * 64);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /** @return the iteration count used for new hashes. */
+    int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Hashes a password with a fresh salt on the worker pool.
+     * @param password the plaintext password.
+     * @return the stored form of the hash.
+     */
+    CompletableFuture<String> hashAsync(String password) {
+        return CompletableFuture.supplyAsync(() -> hash(password), pool);
+    }
+
+    /**
+     * Checks a password against its stored form on the worker pool.
+     * @param password the plaintext password to check.
+     * @param stored the stored hash, or a legacy plaintext password.
+     * @return true if the password matches.
+     */
+    CompletableFuture<Boolean> verifyAsync(String password, String stored) {
+        return CompletableFuture.supplyAsync(() -> verify(password, stored), pool);
+    }
+
+    /**
+     * Hashes a password with a fresh salt on the calling thread.
+     * @param password the plaintext password.
+     * @return the stored form of the hash.
+     */
+    String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Checks a password against its stored form on the calling thread.
+     * @param password the plaintext password to check.
+     * @param stored the stored hash, or a legacy plaintext password.
+     * @return true if the password matches.
+     */
+    boolean verify(String password, String stored) {
+        if (password == null || stored == null) return false;
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] expected = base64.decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, base64.decode(parts[2]), Integer.parseInt(parts[1])));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param stored a stored password.
+     * @return true if it is a hash rather than legacy plaintext.
+     */
+    static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * @param stored a stored password.
+     * @return true if it is plaintext or uses fewer iterations than this hasher.
+     */
+    boolean needsRehash(String stored) {
+        if (!isHashed(stored)) return true;
+        String[] parts = stored.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
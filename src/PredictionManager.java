@@ -1,6 +1,9 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
@@ -11,18 +14,34 @@ public class PredictionManager {
 
     private int totalIncome;
     private int totalExpenses;
+    private int expectedYear;
 
-    public String priority1;
-    public String priority2;
-    public String priority3;
+    // Categories are handled by their id in the store's dictionary
+    private static final int NO_PRIORITY = -1;
+    private CategoryDictionary categories;
+    private File dataDirectory;
+    private long[] expensesByCategory = new long[0];
+    private boolean[] categoryInFile = new boolean[0];
+
+    private int priority1 = NO_PRIORITY;
+    private int priority2 = NO_PRIORITY;
+    private int priority3 = NO_PRIORITY;
 
     /**
      * Constructor 
      * @param csvFilePath
      * @throws IOException
      */
+    @SuppressWarnings("try")
     public PredictionManager(String csvFilePath) throws IOException {
-        parseCSV(csvFilePath);
+        long start = System.nanoTime();
+        boolean parsed = false;
+        try (IOAccounting.Scope io = IOAccounting.begin("prediction.construct")) {
+            parseCSV(csvFilePath);
+            parsed = true;
+        } finally {
+            Metrics.shared().record("prediction.construct", start, parsed);
+        }
     }
 
     /**
@@ -32,77 +51,64 @@ public class PredictionManager {
      * @throws IOException
      */
     private void parseCSV(String filePath) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-        String line;
-
         totalIncome = 0;
         totalExpenses = 0;
-        Integer expectedYear = null;
-        int lineNumber = 0;
-
-        while ((line = reader.readLine()) != null) {
-            lineNumber++;
-            line = line.trim();
-            if (line.isEmpty()) continue;
-
-            // Skip header line if detected
-            if (lineNumber == 1
-                    && line.toLowerCase().contains("date")
-                    && line.contains("category")) {
-                continue;
-            }
-
-            String[] parts = line.split(",");
-            if (parts.length != 3) {
-                System.err.println("Skipping malformed line " + lineNumber + ": " + line);
-                continue;
-            }
-
-            String date = parts[0].trim();
-            String category = parts[1].trim();
-            String amountStr = parts[2].trim();
-
-            // Check if date format is valid
-            if (!ValidationManager.CheckCSVContent.validDateFormat(date)) {
-                System.err.println("Invalid date format at line " + lineNumber + ": " + date);
-                continue;
+        expectedYear = 0;
+        File file = new File(filePath);
+        dataDirectory = file.getAbsoluteFile().getParentFile();
+        categories = CategoryDictionary.forDirectory(dataDirectory);
+
+        // The totals of a fully valid year file already satisfy every check below
+        YearCube cube = null;
+        if (IOAccounting.isFile(file) && file.getName().matches("\\d{4}\\.csv")) {
+            cube = ParsedYearCache.shared().cube(file, Integer.parseInt(file.getName().substring(0, 4)));
+        }
+        if (cube != null && cube.isValid() && cube.rows() > 0) {
+            for (int id = 0; id < cube.categoryCount(); id++) {
+                if (!cube.hasCategory(id)) continue;
+                addTransaction(id, cube.categoryIncome(id));
+                addTransaction(id, -cube.categoryExpenses(id));
             }
+            expectedYear = cube.getYear();
+            return;
+        }
 
-            // Extract and compare year
-            int currentYear = Integer.parseInt(date.split("/")[2]);
-            if (expectedYear == null) {
-                expectedYear = currentYear;
-            } else if (currentYear != expectedYear) {
-                reader.close();
+        YearFileParser.parse(filePath, 0, true, categories, (lineNumber, month, day, year, categoryId, amount) -> {
+            // Every row must share the year of the first valid row
+            if (expectedYear == 0) {
+                expectedYear = year;
+            } else if (year != expectedYear) {
                 throw new IllegalArgumentException("Mismatch: Expected year "
-                        + expectedYear + " but found " + currentYear
+                        + expectedYear + " but found " + year
                         + " at line " + lineNumber);
             }
 
-            // Check if category is valid
-            if (!ValidationManager.CheckCSVContent.validCategories(category)) {
-                System.err.println("Invalid category at line " + lineNumber + ": " + category);
-                continue;
-            }
-
-            // Check if amount is valid
-            if (!ValidationManager.CheckCSVContent.validDollarAmount(amountStr)) {
-                System.err.println("Invalid dollar amount at line " + lineNumber + ": " + amountStr);
-                continue;
-            }
+            addTransaction(categoryId, amount);
+        });
 
-            int amount = Integer.parseInt(amountStr);
-            if (amount > 0) {
-                totalIncome += amount;
-            } else {
-                totalExpenses += Math.abs(amount);
-            }
+        if (expectedYear == 0) {
+            throw new IllegalArgumentException("CSV file contains no valid dated transactions.");
         }
+    }
 
-        reader.close();
-
-        if (expectedYear == null) {
-            throw new IllegalArgumentException("CSV file contains no valid dated transactions.");
+    /**
+     * Adds one transaction to the totals.
+     *
+     * @param categoryId the category id of the transaction
+     * @param amount     the amount in dollars (negative for expenses)
+     */
+    private void addTransaction(int categoryId, long amount) {
+        if (categoryId >= categoryInFile.length) {
+            int size = Math.max(categoryId + 1, categoryInFile.length * 2);
+            categoryInFile = Arrays.copyOf(categoryInFile, size);
+            expensesByCategory = Arrays.copyOf(expensesByCategory, size);
+        }
+        categoryInFile[categoryId] = true;
+        if (amount > 0) {
+            totalIncome += (int) amount;
+        } else {
+            totalExpenses += (int) Math.abs(amount);
+            expensesByCategory[categoryId] -= amount;
         }
     }
 
@@ -111,6 +117,55 @@ public class PredictionManager {
     public int getTotalExpenses() { return totalExpenses; }
     public int getTotalIncome()   { return totalIncome; }
 
+    /**
+     * @return the categories that appear in the file, in dictionary order
+     */
+    public List<String> getCategories() {
+        List<String> names = new ArrayList<>();
+        for (int id = 0; id < categoryInFile.length; id++) {
+            if (categoryInFile[id]) names.add(categories.name(id));
+        }
+        return names;
+    }
+
+    /**
+     * @param category a category name
+     * @return true if the category appears in the file
+     */
+    public boolean hasCategory(String category) {
+        int id = categories.lookup(category);
+        return id >= 0 && id < categoryInFile.length && categoryInFile[id];
+    }
+
+    /**
+     * @param category a category name
+     * @return the total spent on the category over the year
+     */
+    public long getCategoryExpenses(String category) {
+        int id = categories.lookup(category);
+        return id >= 0 && id < expensesByCategory.length ? expensesByCategory[id] : 0;
+    }
+
+    /**
+     * @param rank the priority rank (1-3)
+     * @return the category set at that rank, or null if none
+     */
+    public String getPriority(int rank) {
+        int id = rank == 1 ? priority1 : rank == 2 ? priority2 : rank == 3 ? priority3 : NO_PRIORITY;
+        return id == NO_PRIORITY ? null : categories.name(id);
+    }
+
+    /**
+     * Forecasts next month's expenses per category from every year file next to the
+     * analysed one.
+     *
+     * @return the forecast expenses by category, largest first
+     * @throws IOException if a year file cannot be read
+     */
+    public Map<String, Long> forecastNextMonthExpenses() throws IOException {
+        return ExpenseForecaster.current(dataDirectory).forecastAll();
+    }
+
     public String determineBudgetStatus() {
         if (totalIncome > totalExpenses) return "surplus";
         if (totalIncome < totalExpenses) return "deficit";
@@ -144,12 +199,15 @@ public class PredictionManager {
      * @param category the category to set as a priority
      */
     public void setBudgetPriorities(String category) {
-        if (priority1 == null) {
-            priority1 = category;
-        } else if (priority2 == null) {
-            priority2 = category;
-        } else if (priority3 == null) {
-            priority3 = category;
+        int id = categories.lookup(category);
+        if (id < 0) {
+            System.out.println("Unknown category '" + category + "'.");
+        } else if (priority1 == NO_PRIORITY) {
+            priority1 = id;
+        } else if (priority2 == NO_PRIORITY) {
+            priority2 = id;
+        } else if (priority3 == NO_PRIORITY) {
+            priority3 = id;
         } else {
             System.out.println("Already set 3 priority categories.");
         }
@@ -159,9 +217,9 @@ public class PredictionManager {
      * Clears all budget priorities.
      */
     public void clearBudgetPriorities() {
-        priority1 = null;
-        priority2 = null;
-        priority3 = null;
+        priority1 = NO_PRIORITY;
+        priority2 = NO_PRIORITY;
+        priority3 = NO_PRIORITY;
     }
 
     /**
@@ -172,15 +230,18 @@ public class PredictionManager {
     public void removeBudgetPriority(String category) {
         if (category == null) return;
 
-        if (category.equals(priority1)) {
+        int id = categories.lookup(category);
+        if (id < 0) {
+            System.out.println("Category '" + category + "' is not a current priority.");
+        } else if (id == priority1) {
             priority1 = priority2;
             priority2 = priority3;
-            priority3 = null;
-        } else if (category.equals(priority2)) {
+            priority3 = NO_PRIORITY;
+        } else if (id == priority2) {
             priority2 = priority3;
-            priority3 = null;
-        } else if (category.equals(priority3)) {
-            priority3 = null;
+            priority3 = NO_PRIORITY;
+        } else if (id == priority3) {
+            priority3 = NO_PRIORITY;
         } else {
             System.out.println("Category '" + category + "' is not a current priority.");
         }
@@ -199,24 +260,14 @@ public class PredictionManager {
      * @param amount   the amount to modify by
      */
     public void modifySpending(String category, int amount) {
-        int adjustedAmount = amount;
-        int remaining = 0;
-
-        // Adjust based on priority
-        if (category.equals(priority1)) {
+        int id = categories.lookup(category);
+        if (id >= 0 && id == priority1) {
             System.out.println("Cannot modify spending in top priority category (" + category + ").");
-            remaining = amount;
-            adjustedAmount = 0;
-        } else if (category.equals(priority2)) {
-            adjustedAmount = amount / 2;
-            remaining = amount - adjustedAmount;
-        } else if (category.equals(priority3)) {
-        	adjustedAmount = (amount / 4) * 3;
-            remaining = amount - adjustedAmount;
         }
-
-        totalExpenses += adjustedAmount;
-        if (totalExpenses < 0) totalExpenses = 0;
+        SpendingChange change = applySpendingChange(totalExpenses, id, amount, priority1, priority2, priority3);
+        int adjustedAmount = change.getAdjustedAmount();
+        int remaining = change.getRemaining();
+        totalExpenses = change.getExpensesBeforeRemaining();
 
         // If there's leftover, prompt for a different category
         String secondaryCategory = null;
@@ -230,8 +281,7 @@ public class PredictionManager {
                 }
             } while (secondaryCategory.equals(category));
 
-            totalExpenses += remaining;
-            if (totalExpenses < 0) totalExpenses = 0;
+            totalExpenses = change.getTotalExpenses();
 
             System.out.println("Adjusted spending in " + secondaryCategory + " by $" + remaining);
         }
@@ -253,4 +303,88 @@ public class PredictionManager {
                     secondaryCategory, remaining, remaining * 2, remaining * 5);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Computes the effect of {@link #modifySpending(String, int)} without changing any
+     * state or prompting: the priority multipliers are applied to the amount and the
+     * leftover of a priority category is added on top, as if moved to another category.
+     *
+     * @param totalExpenses the expenses before the change
+     * @param categoryId    the id of the category to modify, or -1 if unknown
+     * @param amount        the amount to modify by
+     * @param priority1     the id of the top priority category, or -1
+     * @param priority2     the id of the second priority category, or -1
+     * @param priority3     the id of the third priority category, or -1
+     * @return the outcome of the change
+     */
+    public static SpendingChange applySpendingChange(int totalExpenses, int categoryId, int amount,
+                                                     int priority1, int priority2, int priority3) {
+        int adjustedAmount = amount;
+        int remaining = 0;
+
+        // Adjust based on priority; unknown categories (id -1) must not match an unset priority
+        if (categoryId < 0) {
+            adjustedAmount = amount;
+        } else if (categoryId == priority1) {
+            remaining = amount;
+            adjustedAmount = 0;
+        } else if (categoryId == priority2) {
+            adjustedAmount = amount / 2;
+            remaining = amount - adjustedAmount;
+        } else if (categoryId == priority3) {
+            adjustedAmount = (amount / 4) * 3;
+            remaining = amount - adjustedAmount;
+        }
+
+        int expenses = totalExpenses + adjustedAmount;
+        if (expenses < 0) expenses = 0;
+        int beforeRemaining = expenses;
+
+        // The leftover goes to a different category
+        if (remaining > 0) {
+            expenses += remaining;
+            if (expenses < 0) expenses = 0;
+        }
+        return new SpendingChange(adjustedAmount, remaining, beforeRemaining, expenses);
+    }
+
+    /**
+     * Outcome of {@link #applySpendingChange}.
+     */
+    public static final class SpendingChange {
+        private final int adjustedAmount;
+        private final int remaining;
+        private final int expensesBeforeRemaining;
+        private final int totalExpenses;
+
+        SpendingChange(int adjustedAmount, int remaining, int expensesBeforeRemaining, int totalExpenses) {
+            this.adjustedAmount = adjustedAmount;
+            this.remaining = remaining;
+            this.expensesBeforeRemaining = expensesBeforeRemaining;
+            this.totalExpenses = totalExpenses;
+        }
+
+        /** @return the part of the amount applied to the category itself */
+        public int getAdjustedAmount() { return adjustedAmount; }
+        /** @return the part of the amount moved to another category (positive only) */
+        public int getRemaining() { return remaining; }
+        /** @return the expenses after the category's own part, before the leftover */
+        public int getExpensesBeforeRemaining() { return expensesBeforeRemaining; }
+        /** @return the expenses after the whole change */
+        public int getTotalExpenses() { return totalExpenses; }
+    }
+
+    /**
+     * @return the id of the category at a priority rank (1-3), or -1 if none
+     */
+    int getPriorityId(int rank) {
+        return rank == 1 ? priority1 : rank == 2 ? priority2 : rank == 3 ? priority3 : NO_PRIORITY;
+    }
+
+    /**
+     * @return the dictionary the category ids refer to
+     */
+    CategoryDictionary getCategoryDictionary() {
+        return categories;
+    }
+}
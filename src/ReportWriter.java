@@ -0,0 +1,234 @@
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams a yearly report, one row per month followed by the year's total, to an
+ * {@link Appendable}. Amounts are whole dollars and are written with two decimals
+ * by {@link FixedPoint}; net is income minus expenses, and expenses are positive.
+ *
+ * <p>A report is written as {@link #begin(int)}, twelve calls to {@link #month},
+ * {@link #total} and {@link #end()}.</p>
+ */
+public abstract class ReportWriter {
+
+    /** Names of the months, January first. */
+    public static final String[] MONTHS = {"January", "February", "March", "April", "May", "June", "July",
+            "August", "September", "October", "November", "December"};
+
+    /** The destination of the rows. */
+    protected final Appendable out;
+    /** The year being reported, set by {@link #begin(int)}. */
+    protected int year;
+
+    /**
+     * @param out the destination of the rows.
+     */
+    protected ReportWriter(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * Starts a report.
+     * @param year the year being reported.
+     * @throws IOException if the destination throws.
+     */
+    public void begin(int year) throws IOException {
+        this.year = year;
+    }
+
+    /**
+     * Writes the row of one month.
+     * @param month the month (1-12).
+     * @param income the income of the month.
+     * @param expenses the expenses of the month, as a positive amount.
+     * @throws IOException if the destination throws.
+     */
+    public abstract void month(int month, long income, long expenses) throws IOException;
+
+    /**
+     * Writes the row of the whole year.
+     * @param income the income of the year.
+     * @param expenses the expenses of the year, as a positive amount.
+     * @throws IOException if the destination throws.
+     */
+    public abstract void total(long income, long expenses) throws IOException;
+
+    /**
+     * Ends the report and flushes the destination if it can be flushed.
+     * @throws IOException if the destination throws.
+     */
+    public void end() throws IOException {
+        if (out instanceof Flushable) ((Flushable) out).flush();
+    }
+
+    /**
+     * Writes a whole report from a cube.
+     * @param cube the totals of the year.
+     * @throws IOException if the destination throws.
+     */
+    public void write(YearCube cube) throws IOException {
+        begin(cube.getYear());
+        for (int m = 1; m <= 12; m++) month(m, cube.monthIncome(m), cube.monthExpenses(m));
+        total(cube.totalIncome(), cube.totalExpenses());
+        end();
+    }
+
+    /**
+     * Wraps a byte stream for a writer. {@link #end()} flushes it but does not close it.
+     * @param out the stream.
+     * @return a buffered UTF-8 writer on the stream.
+     */
+    public static Appendable utf8(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Comma-separated values with a {@code Month,Income,Expenses,Net} header; the total
+     * row is labelled {@code Year}.
+     */
+    public static final class Csv extends ReportWriter {
+
+        /**
+         * @param out the destination of the rows.
+         */
+        public Csv(Appendable out) {
+            super(out);
+        }
+
+        @Override
+        public void begin(int year) throws IOException {
+            super.begin(year);
+            out.append("Month,Income,Expenses,Net\n");
+        }
+
+        @Override
+        public void month(int month, long income, long expenses) throws IOException {
+            row(MONTHS[month - 1], income, expenses);
+        }
+
+        @Override
+        public void total(long income, long expenses) throws IOException {
+            row("Year", income, expenses);
+        }
+
+        private void row(String label, long income, long expenses) throws IOException {
+            out.append(label).append(',');
+            FixedPoint.appendDollars(out, income);
+            out.append(',');
+            FixedPoint.appendDollars(out, expenses);
+            out.append(',');
+            FixedPoint.appendDollars(out, income - expenses);
+            out.append('\n');
+        }
+    }
+
+    /**
+     * One JSON object per line, e.g.
+     * {@code {"year":2025,"month":"January","income":4200.00,"expenses":616.00,"net":3584.00}};
+     * the total row has {@code "month":null}.
+     */
+    public static final class JsonLines extends ReportWriter {
+
+        /**
+         * @param out the destination of the rows.
+         */
+        public JsonLines(Appendable out) {
+            super(out);
+        }
+
+        @Override
+        public void month(int month, long income, long expenses) throws IOException {
+            row(MONTHS[month - 1], income, expenses);
+        }
+
+        @Override
+        public void total(long income, long expenses) throws IOException {
+            row(null, income, expenses);
+        }
+
+        private void row(String month, long income, long expenses) throws IOException {
+            out.append("{\"year\":");
+            FixedPoint.append(out, year, 0);
+            out.append(",\"month\":");
+            if (month == null) {
+                out.append("null");
+            } else {
+                out.append('"').append(month).append('"');
+            }
+            out.append(",\"income\":");
+            FixedPoint.appendDollars(out, income);
+            out.append(",\"expenses\":");
+            FixedPoint.appendDollars(out, expenses);
+            out.append(",\"net\":");
+            FixedPoint.appendDollars(out, income - expenses);
+            out.append("}\n");
+        }
+    }
+
+    /**
+     * Fixed-width table for the console, as printed by {@link ReportsManager}.
+     */
+    public static final class Console extends ReportWriter {
+        private final int width;
+
+        /**
+         * @param out the destination of the rows.
+         * @param width the width of the income and expenses columns.
+         */
+        public Console(Appendable out, int width) {
+            super(out);
+            this.width = width;
+        }
+
+        /**
+         * Picks the column width the console report has always used: one more than
+         * the length of the year's income printed as a double, at least 8.
+         * @param totalIncome the income of the year.
+         * @return the column width.
+         */
+        public static int widthFor(long totalIncome) {
+            return Math.max(8, ("" + (double) totalIncome).length() + 1);
+        }
+
+        @Override
+        public void begin(int year) throws IOException {
+            super.begin(year);
+            pad("Month", 9);
+            out.append(" | ");
+            pad("Income", width);
+            out.append(" | ");
+            pad("Expenses", width);
+            out.append(" | Net\n\n");
+        }
+
+        @Override
+        public void month(int month, long income, long expenses) throws IOException {
+            row(MONTHS[month - 1], income, expenses);
+        }
+
+        @Override
+        public void total(long income, long expenses) throws IOException {
+            row(Integer.toString(year), income, expenses);
+        }
+
+        private void row(String label, long income, long expenses) throws IOException {
+            pad(label, 9);
+            out.append(" | ");
+            FixedPoint.appendPadded(out, income * 100, 2, width);
+            out.append(" | ");
+            FixedPoint.appendPadded(out, expenses * 100, 2, width);
+            out.append(" | ");
+            FixedPoint.appendDollars(out, income - expenses);
+            out.append('\n');
+        }
+
+        private void pad(String text, int columns) throws IOException {
+            out.append(text);
+            for (int i = text.length(); i < columns; i++) out.append(' ');
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.io.*;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Utility class for analyzing and reporting financial data.
@@ -24,82 +25,101 @@ class ReportsManager {
      * @param writeToFile true to output to a file, false to output to the console
      * @throws IllegalArgumentException if the year is not in YYYY format
      */
+    @SuppressWarnings("try")
     public static void analyzeData(Account account, int year, boolean writeToFile) throws IllegalArgumentException {
         if (year < 1000 || year > 9999) {
             throw new IllegalArgumentException("Invalid Year");
         }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try (IOAccounting.Scope io = IOAccounting.begin("reports.analyzeData")) {
+            succeeded = analyzeYear(account, year, writeToFile);
+        } finally {
+            Metrics.shared().record("reports.analyzeData", start, succeeded);
+        }
+    }
+
+    /**
+     * Outputs the report of {@link #analyzeData}.
+     * @return false if the year file is missing or invalid, or the report could not be saved
+     */
+    private static boolean analyzeYear(Account account, int year, boolean writeToFile) {
         String userDirectory = System.getProperty("user.dir");
         userDirectory = userDirectory + "/pfm_data/" + account.getUsername() + "/";
         String filePath = userDirectory + year + ".csv";
-        boolean isValid = ValidationManager.CheckCSVFileFormat.validCSVFile(filePath) && ValidationManager.CheckCSVContent.validateWholeCSVFile(year, filePath);
-        if (isValid == false) {
+        YearCube cube = loadYear(filePath, year);
+        if (cube == null) {
             System.err.println("Error: Invalid file. Aborting.");
-            return;
-        }
-        File file = new File(filePath);
-        double[] monthlyIncomes = new double[12];
-        double[] monthlyExpenses = new double[12];
-        double[] monthlyNet = new double[12];
-        double incomeYear = 0;
-        double expensesYear = 0;
-        double netYear = 0; 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                String[] dateSplit = parts[0].split("/");
-                int month = Integer.parseInt(dateSplit[0]) - 1;
-                double money = Double.parseDouble(parts[2]);
-                if (money < 0){
-                    monthlyExpenses[month] -= money;
-                    monthlyNet[month] += money;
-                    expensesYear -= money;
-                }
-                else {
-                    monthlyIncomes[month] += money;
-                    monthlyNet[month] += money;
-                    incomeYear += money;
-                }
-            }
-
-        } catch (IOException e) {
-        	System.out.println("Error");
-            e.printStackTrace();
+            return false;
         }
-        netYear = incomeYear - expensesYear;
-        String yearString = "" + incomeYear;
-        int numberSpacing = yearString.length() + 1;
-        if (numberSpacing < 8) numberSpacing = 8;
-        String[] months = {"January", "February", "March", "April", "May", "June", "July", "August", "September", "October", "November", "December"};
         if (!writeToFile)  {
-            System.out.println(String.format("%-9s | %-" + numberSpacing + "s | %-" + numberSpacing + "s | %s", "Month", "Income", "Expenses", "Net"));
-            System.out.println();
-            for (int i = 0; i < 12; i++) {
-                System.out.println(String.format("%-9s | %-" + numberSpacing + ".2f | %-" + numberSpacing + ".2f | %.2f", months[i], monthlyIncomes[i], monthlyExpenses[i], monthlyNet[i]));
-            }
-            System.out.println(String.format("%-9s | %-" + numberSpacing + ".2f | %-" + numberSpacing + ".2f | %.2f", year, incomeYear, expensesYear, netYear));
+            printReport(cube);
         }
         else {
-            String reportFilePath = userDirectory + "Report" + year + ".csv";
-            File reportFile = new File(reportFilePath);
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(reportFile))) {
-            bw.write("Month, income, expenses, net");
-            bw.newLine();
-            for (int i = 0; i < 12; i++) {
-                bw.write(String.format("%s, %.2f, -%.2f, %.2f, ", months[i], monthlyIncomes[i], monthlyExpenses[i], monthlyNet[i]));
-                bw.newLine();
-            }
-            bw.write(String.format("Year, %.2f, -%.2f, %.2f", incomeYear, expensesYear, netYear));
-            
-            System.out.println("Saved in user " + account.getUsername() + "'s user directory");
-
+            File reportFile = new File(userDirectory + "Report" + year + ".csv");
+            try {
+                writeReport(reportFile, cube);
+                System.out.println("Saved in user " + account.getUsername() + "'s user directory");
             } catch (IOException e) {
                 e.printStackTrace();
+                return false;
             }
         }
-            
+        return true;
+    }
+
+    /**
+     * Writes the {@code Report<year>.csv} of one user directory without prompting or
+     * printing, so that many reports can be generated concurrently.
+     *
+     * @param userDirectory the {@code pfm_data/<user>} directory
+     * @param year the year to report on
+     * @return false if the year file is missing or has invalid records
+     * @throws IOException if the year file cannot be read or the report cannot be written
+     */
+    static boolean generateReport(File userDirectory, int year) throws IOException {
+        String filePath = new File(userDirectory, year + ".csv").getPath();
+        if (!ValidationManager.CheckCSVFileFormat.validCSVFile(filePath)) return false;
+        YearCube cube = ParsedYearCache.shared().cube(new File(filePath), year);
+        if (!cube.isValid()) return false;
+        writeReport(new File(userDirectory, "Report" + year + ".csv"), cube);
+        return true;
+    }
+
+    /**
+     * Loads the totals of a year file.
+     * @return the cube of the year, or null if the file is missing or invalid
+     */
+    private static YearCube loadYear(String filePath, int year) {
+        if (!ValidationManager.CheckCSVFileFormat.validCSVFile(filePath)) return null;
+        try {
+            YearCube cube = ParsedYearCache.shared().cube(new File(filePath), year);
+            return cube.isValid() ? cube : null;
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            return null;
+        }
+    }
 
+    private static void printReport(YearCube cube) {
+        StringBuilder report = new StringBuilder(1024);
+        try {
+            new ReportWriter.Console(report, ReportWriter.Console.widthFor(cube.totalIncome())).write(cube);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+        }
+        System.out.print(report);
+    }
 
+    private static void writeReport(File reportFile, YearCube cube) throws IOException {
+        // Concurrent reports of the same user-year would otherwise interleave
+        Lock lock = UserLocks.shared().forFile(reportFile).writeLock();
+        lock.lock();
+        try (BufferedWriter bw = IOAccounting.openWriter(reportFile, false)) {
+            new ReportWriter.Csv(bw).write(cube);
+        } finally {
+            lock.unlock();
+        }
     }
 
 }
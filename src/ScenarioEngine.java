@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Non-interactive what-if analysis: evaluates many spending scenarios against the
+ * totals of one {@link PredictionManager}, in parallel, and ranks them by projected
+ * savings. Each scenario is evaluated with
+ * {@link PredictionManager#applySpendingChange}, so results match what
+ * {@link PredictionManager#modifySpending(String, int)} would print for the same
+ * priorities, category and amount.
+ *
+ * <p>The baseline totals are copied when the engine is created; evaluating scenarios
+ * never changes them or the manager.</p>
+ */
+public final class ScenarioEngine {
+
+    /**
+     * One what-if scenario: a priority ordering of up to three categories and a change
+     * of spending in one category.
+     */
+    public static final class Scenario {
+        private final String[] priorities;
+        private final String category;
+        private final int amount;
+
+        /**
+         * @param priorities the priority categories, highest first (at most 3).
+         * @param category the category whose spending changes.
+         * @param amount the change of spending, negative to spend less.
+         */
+        public Scenario(String[] priorities, String category, int amount) {
+            if (priorities.length > 3) {
+                throw new IllegalArgumentException("At most 3 priority categories, got " + priorities.length);
+            }
+            this.priorities = priorities.clone();
+            this.category = category;
+            this.amount = amount;
+        }
+
+        /** @return the priority categories, highest first. */
+        public List<String> getPriorities() { return Collections.unmodifiableList(Arrays.asList(priorities)); }
+        /** @return the category whose spending changes. */
+        public String getCategory() { return category; }
+        /** @return the change of spending. */
+        public int getAmount() { return amount; }
+
+        @Override
+        public String toString() {
+            return "priorities=" + Arrays.toString(priorities) + ", " + category + " " + (amount >= 0 ? "+" : "") + amount;
+        }
+    }
+
+    /**
+     * The outcome of one scenario.
+     */
+    public static final class Result {
+        private final Scenario scenario;
+        private final int index;
+        private final PredictionManager.SpendingChange change;
+        private final long annualSavings;
+        private int rank;
+
+        private Result(Scenario scenario, int index, PredictionManager.SpendingChange change, long annualSavings) {
+            this.scenario = scenario;
+            this.index = index;
+            this.change = change;
+            this.annualSavings = annualSavings;
+        }
+
+        /** @return the evaluated scenario. */
+        public Scenario getScenario() { return scenario; }
+        /** @return the 1-based rank among all evaluated scenarios; 1 saves the most. */
+        public int getRank() { return rank; }
+        /** @return the position of the scenario in the evaluated list. */
+        public int getIndex() { return index; }
+        /** @return the part of the amount applied to the scenario's category. */
+        public int getAdjustedAmount() { return change.getAdjustedAmount(); }
+        /** @return the part of the amount moved to another category. */
+        public int getRemaining() { return change.getRemaining(); }
+        /** @return the expenses after the change. */
+        public int getTotalExpenses() { return change.getTotalExpenses(); }
+        /** @return the projected savings over one year. */
+        public long getAnnualSavings() { return annualSavings; }
+
+        /**
+         * @param years the number of years.
+         * @return the projected savings over that many years.
+         */
+        public long getSavings(int years) { return annualSavings * years; }
+    }
+
+    private final int totalIncome;
+    private final int totalExpenses;
+    private final CategoryDictionary categories;
+    private final List<String> fileCategories;
+
+    /**
+     * Constructs an engine over the current totals of a manager.
+     * @param baseline the manager whose totals and categories are used.
+     */
+    public ScenarioEngine(PredictionManager baseline) {
+        this.totalIncome = baseline.getTotalIncome();
+        this.totalExpenses = baseline.getTotalExpenses();
+        this.categories = baseline.getCategoryDictionary();
+        this.fileCategories = Collections.unmodifiableList(baseline.getCategories());
+    }
+
+    /** @return the categories of the baseline year. */
+    public List<String> getCategories() {
+        return fileCategories;
+    }
+
+    /**
+     * Evaluates scenarios in parallel.
+     * @param scenarios the scenarios to evaluate.
+     * @return one result per scenario, best savings first; ties keep the input order.
+     */
+    public List<Result> evaluate(List<Scenario> scenarios) {
+        Result[] results = new Result[scenarios.size()];
+        IntStream.range(0, results.length).parallel().forEach(i -> results[i] = evaluate(scenarios.get(i), i));
+        Arrays.parallelSort(results, (a, b) -> a.annualSavings != b.annualSavings
+                ? Long.compare(b.annualSavings, a.annualSavings)
+                : Integer.compare(a.index, b.index));
+        for (int i = 0; i < results.length; i++) results[i].rank = i + 1;
+        return Arrays.asList(results);
+    }
+
+    private Result evaluate(Scenario scenario, int index) {
+        int[] priority = {-1, -1, -1};
+        for (int i = 0; i < scenario.priorities.length; i++) priority[i] = categories.lookup(scenario.priorities[i]);
+        PredictionManager.SpendingChange change = PredictionManager.applySpendingChange(totalExpenses,
+                categories.lookup(scenario.category), scenario.amount, priority[0], priority[1], priority[2]);
+        return new Result(scenario, index, change, (long) totalIncome - change.getTotalExpenses());
+    }
+
+    /**
+     * Builds every combination of a priority ordering (none, or an ordered choice of one
+     * to three of the categories), a category to change and an amount.
+     * @param categories the categories to combine.
+     * @param amounts the spending changes to try.
+     * @return the scenarios.
+     */
+    public static List<Scenario> sweep(List<String> categories, int... amounts) {
+        List<String[]> orderings = new ArrayList<>();
+        orderings.add(new String[0]);
+        int n = categories.size();
+        for (int a = 0; a < n; a++) {
+            orderings.add(new String[] {categories.get(a)});
+            for (int b = 0; b < n; b++) {
+                if (b == a) continue;
+                orderings.add(new String[] {categories.get(a), categories.get(b)});
+                for (int c = 0; c < n; c++) {
+                    if (c == a || c == b) continue;
+                    orderings.add(new String[] {categories.get(a), categories.get(b), categories.get(c)});
+                }
+            }
+        }
+
+        List<Scenario> scenarios = new ArrayList<>(orderings.size() * n * amounts.length);
+        for (String[] ordering : orderings) {
+            for (String category : categories) {
+                for (int amount : amounts) scenarios.add(new Scenario(ordering, category, amount));
+            }
+        }
+        return scenarios;
+    }
+
+    /**
+     * Sweeps every scenario of a year file and prints the best ones.
+     * @param args the year file, then one or more spending changes, e.g. {@code -100 -500}.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: ScenarioEngine <year.csv> <amount>...");
+            return;
+        }
+        try {
+            int[] amounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) amounts[i - 1] = Integer.parseInt(args[i]);
+
+            ScenarioEngine engine = new ScenarioEngine(new PredictionManager(args[0]));
+            long start = System.nanoTime();
+            List<Scenario> scenarios = sweep(engine.getCategories(), amounts);
+            List<Result> results = engine.evaluate(scenarios);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%-5s | %-12s | %-12s | %-12s | %s%n", "Rank", "1 Year", "2 Years", "5 Years", "Scenario");
+            for (Result result : results.subList(0, Math.min(20, results.size()))) {
+                System.out.printf("%-5d | %-12d | %-12d | %-12d | %s%n", result.getRank(), result.getSavings(1),
+                        result.getSavings(2), result.getSavings(5), result.getScenario());
+            }
+            System.out.printf("Evaluated %d scenarios in %.1f ms%n", results.size(), elapsed / 1e6);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid amount: " + e.getMessage());
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Prediction failed: " + e.getMessage());
+        }
+    }
+}
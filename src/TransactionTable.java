@@ -0,0 +1,194 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable table of the transactions of one year, stored column by column:
+ * packed dates, category ids and amounts live in parallel primitive arrays, and the
+ * ids refer to the store's {@link CategoryDictionary}. Use a {@link Cursor} to walk the
+ * rows without creating an object per row.
+ */
+public final class TransactionTable implements Iterable<Budget.Transaction> {
+
+    private final int size;
+    private final int[] dates;
+    private final int[] categoryIds;
+    private final long[] amounts;
+    private final CategoryDictionary categories;
+
+    /**
+     * Constructs a table over existing columns. The arrays are not copied.
+     * @param size the number of rows.
+     * @param dates dates packed as {@code year * 10000 + month * 100 + day}.
+     * @param categoryIds the category id of each row.
+     * @param amounts the amount in dollars of each row.
+     * @param categories the dictionary the category ids refer to.
+     */
+    TransactionTable(int size, int[] dates, int[] categoryIds, long[] amounts, CategoryDictionary categories) {
+        this.size = size;
+        this.dates = dates;
+        this.categoryIds = categoryIds;
+        this.amounts = amounts;
+        this.categories = categories;
+    }
+
+    /** @return the number of transactions. */
+    public int size() { return size; }
+    /** @return true if there are no transactions. */
+    public boolean isEmpty() { return size == 0; }
+    /** @return the date of a row packed as {@code year * 10000 + month * 100 + day}. */
+    public int date(int row) { return dates[check(row)]; }
+    /** @return the month (1-12) of a row. */
+    public int month(int row) { return date(row) / 100 % 100; }
+    /** @return the day of the month of a row. */
+    public int day(int row) { return date(row) % 100; }
+    /** @return the year of a row. */
+    public int year(int row) { return date(row) / 10000; }
+    /** @return the category id of a row. */
+    public int categoryId(int row) { return categoryIds[check(row)]; }
+    /** @return the category name of a row. */
+    public String category(int row) { return categories.name(categoryId(row)); }
+    /** @return the amount in dollars of a row. */
+    public long amount(int row) { return amounts[check(row)]; }
+    /** @return the dictionary the category ids refer to. */
+    public CategoryDictionary getCategories() { return categories; }
+
+    /**
+     * Returns the same rows with their category ids translated to another dictionary,
+     * e.g. from a {@link CategoryDictionary#stage() staging copy} to the store's.
+     * @param ids the new id of each category id of this table.
+     * @param categories the dictionary the new ids refer to.
+     * @return the translated table; the date and amount columns are shared.
+     */
+    public TransactionTable withCategories(int[] ids, CategoryDictionary categories) {
+        int[] mapped = new int[size];
+        for (int row = 0; row < size; row++) mapped[row] = ids[categoryIds[row]];
+        return new TransactionTable(size, dates, mapped, amounts, categories);
+    }
+
+    /**
+     * Materializes one row as a {@link Budget.Transaction}.
+     * @param row the row index.
+     * @return a new transaction object.
+     */
+    public Budget.Transaction get(int row) {
+        return new Budget.Transaction(month(row), day(row), year(row), category(row), amount(row));
+    }
+
+    /** @return a cursor positioned before the first row. */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Iterates over the rows as {@link Budget.Transaction} objects. Prefer
+     * {@link #cursor()} for large tables.
+     */
+    @Override
+    public Iterator<Budget.Transaction> iterator() {
+        return new Iterator<Budget.Transaction>() {
+            private int row;
+
+            @Override
+            public boolean hasNext() { return row < size; }
+
+            @Override
+            public Budget.Transaction next() {
+                if (row >= size) throw new NoSuchElementException();
+                return get(row++);
+            }
+        };
+    }
+
+    int[] dates() { return dates; }
+    int[] categoryIds() { return categoryIds; }
+    long[] amounts() { return amounts; }
+
+    private int check(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        return row;
+    }
+
+    /**
+     * Flyweight view of one row at a time. {@link #next()} moves it to the following row.
+     */
+    public final class Cursor {
+        private int row = -1;
+
+        /**
+         * Moves to the next row.
+         * @return false if there are no more rows.
+         */
+        public boolean next() {
+            if (row + 1 >= size) {
+                row = size;
+                return false;
+            }
+            row++;
+            return true;
+        }
+
+        /** @return the index of the current row. */
+        public int getRow() { return row; }
+        /** @return the month (1-12) of the current row. */
+        public int getMonth() { return dates[row] / 100 % 100; }
+        /** @return the day of the month of the current row. */
+        public int getDay() { return dates[row] % 100; }
+        /** @return the year of the current row. */
+        public int getYear() { return dates[row] / 10000; }
+        /** @return the category id of the current row. */
+        public int getCategoryId() { return categoryIds[row]; }
+        /** @return the category of the current row. */
+        public String getCategory() { return categories.name(categoryIds[row]); }
+        /** @return the amount in dollars of the current row. */
+        public long getAmount() { return amounts[row]; }
+    }
+
+    /**
+     * Collects parsed rows into a table.
+     */
+    public static final class Builder implements YearFileParser.RowHandler {
+        private final CategoryDictionary categories;
+        private int size;
+        private int[] dates = new int[64];
+        private int[] categoryIds = new int[64];
+        private long[] amounts = new long[64];
+
+        /**
+         * Constructs an empty builder.
+         * @param categories the dictionary the category ids refer to.
+         */
+        public Builder(CategoryDictionary categories) {
+            this.categories = categories;
+        }
+
+        @Override
+        public void row(int lineNumber, int month, int day, int year, int categoryId, long amount) {
+            add(year * 10000 + month * 100 + day, categoryId, amount);
+        }
+
+        /**
+         * Appends one row.
+         * @param date the date packed as {@code year * 10000 + month * 100 + day}.
+         * @param categoryId the category id.
+         * @param amount the amount in dollars.
+         */
+        public void add(int date, int categoryId, long amount) {
+            if (size == dates.length) {
+                dates = Arrays.copyOf(dates, size * 2);
+                categoryIds = Arrays.copyOf(categoryIds, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+            }
+            dates[size] = date;
+            categoryIds[size] = categoryId;
+            amounts[size] = amount;
+            size++;
+        }
+
+        /** @return the rows collected so far as a table. */
+        public TransactionTable build() {
+            return new TransactionTable(size, Arrays.copyOf(dates, size), Arrays.copyOf(categoryIds, size),
+                    Arrays.copyOf(amounts, size), categories);
+        }
+    }
+}
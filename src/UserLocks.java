@@ -0,0 +1,67 @@
+import java.io.File;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Striped read/write locks over user data directories. Everything that reads a user's
+ * year files holds the read lock of that user; everything that writes or deletes them,
+ * or the files derived from them, holds the write lock. Many sessions can then read
+ * the same user's data at once, while writes are serialized per user only.
+ *
+ * <p>A fixed number of locks is shared by all users, chosen by a hash of the
+ * directory's absolute path, so memory does not grow with the number of users; two
+ * users that share a stripe merely wait for each other's writes. The number of stripes
+ * defaults to the {@code pfm.locks.stripes} system property (rounded up to a power of
+ * two).</p>
+ *
+ * <p>Lock order: a user lock is always taken before the monitors of
+ * {@link ParsedYearCache} and {@link CategoryDictionary}, and a read lock is never
+ * upgraded to a write lock.</p>
+ */
+public final class UserLocks {
+
+    /** Default number of stripes. */
+    public static final int DEFAULT_STRIPES = 64;
+
+    private static final UserLocks SHARED = new UserLocks(Integer.getInteger("pfm.locks.stripes", DEFAULT_STRIPES));
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    /**
+     * Constructs a set of stripes.
+     * @param stripes the number of stripes, rounded up to a power of two.
+     */
+    public UserLocks(int stripes) {
+        if (stripes < 1) throw new IllegalArgumentException("At least one stripe is required");
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) this.stripes[i] = new ReentrantReadWriteLock();
+    }
+
+    /** @return the locks shared by the whole process. */
+    public static UserLocks shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param userDirectory the {@code pfm_data/<user>} directory.
+     * @return the lock guarding the directory's files.
+     */
+    public ReentrantReadWriteLock forDirectory(File userDirectory) {
+        int h = userDirectory.getAbsoluteFile().toPath().normalize().toString().hashCode();
+        h ^= h >>> 16;
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    /**
+     * @param file a year file or a file derived from it.
+     * @return the lock guarding the directory the file is in.
+     */
+    public ReentrantReadWriteLock forFile(File file) {
+        return forDirectory(file.getAbsoluteFile().getParentFile());
+    }
+
+    /** @return the number of stripes. */
+    public int stripes() {
+        return stripes.length;
+    }
+}
@@ -6,9 +6,9 @@
  * @version 1.1, 12 May 2025
  */
 import java.io.File;            // To create File objects and check if files exist, are readable, etc.
-import java.io.FileReader;       // To open a file for reading (specifically text files like CSVs).
 import java.io.BufferedReader;   // To read text from a file efficiently line-by-line.
 import java.io.IOException;      // To handle exceptions during file operations (read errors, etc).
+import java.nio.charset.StandardCharsets; // To decode byte buffers for error messages.
 
 
 /**
@@ -35,7 +35,8 @@ public class ValidationManager {
             }
             File file = new File(filePath); 
             // Check if file exists, is a file (not a directory), is readable, and ends with ".csv"
-            return file.exists() && file.isFile() && file.canRead() && filePath.toLowerCase().endsWith(".csv");
+            return IOAccounting.exists(file) && IOAccounting.isFile(file) && IOAccounting.canRead(file)
+                    && filePath.toLowerCase().endsWith(".csv");
         }
     }
 
@@ -54,30 +55,57 @@ public class ValidationManager {
 	   *@return false if date format is in valid or if it isnt numerical. otherwise true
 	*/
         public static boolean validDateFormat(String date) {
-            String[] partsOfDate = date.split("/"); 
-            if (partsOfDate.length != 3) { // Must have 3 parts: MM, DD, YYYY
-                return false;
-            }
-            // Check if it only contains nums
-            for (String part : partsOfDate) { 
-                if (!(part.trim().matches("[0-9]\\d*"))) {
-                    return false;
+            return scanDate(date, 0, date.length()) >= 0;
+        }
+
+        // Days in each month of a non-leap year
+        private static final int[] DAYS_PER_MONTH = {31,28,31,30,31,30,31,31,30,31,30,31};
+
+        /**
+         * Scans a MM/DD/YYYY date without creating any intermediate objects.
+         * Accepts what the former split/regex implementation accepted, including trailing
+         * slashes (which {@code String.split} used to drop). Padded or overflowing numbers,
+         * which used to throw NumberFormatException, are rejected.
+         * @param s the characters to scan
+         * @param from index of the first character of the date
+         * @param to index just past the last character of the date
+         * @return the date packed as {@code year * 10000 + month * 100 + day}, or -1 if invalid
+         */
+        static long scanDate(CharSequence s, int from, int to) {
+            int month = 0, day = 0, year = 0;
+            int i = from;
+            for (int part = 0; part < 3; part++) {
+                int start = i;
+                long value = 0;
+                while (i < to) {
+                    char c = s.charAt(i);
+                    if (c < '0' || c > '9') break;
+                    value = value * 10 + (c - '0');
+                    if (value > Integer.MAX_VALUE) return -1;
+                    i++;
+                }
+                if (i == start) return -1; // empty or non-numeric part
+                if (part < 2) {
+                    if (i == to || s.charAt(i) != '/') return -1;
+                    i++;
                 }
+                if (part == 0) month = (int) value;
+                else if (part == 1) day = (int) value;
+                else year = (int) value;
+            }
+            // Only separators may follow the year
+            for (; i < to; i++) {
+                if (s.charAt(i) != '/') return -1;
             }
 
-            int daysPerMonth[] = {31,28,31,30,31,30,31,31,30,31,30,31};
-            // Parsing month, day, and year
-            int month = Integer.parseInt(partsOfDate[0]);
-            int day = Integer.parseInt(partsOfDate[1]);
-            int year = Integer.parseInt(partsOfDate[2]);
-
+            if (month < 1 || month > 12 || day < 1 || year < 1) return -1;
+            int daysInMonth = DAYS_PER_MONTH[month - 1];
             // checking for leap year
-            if ((year % 400 == 0) || (year % 4 == 0 && year % 100 != 0)) {
-                daysPerMonth[1]++; // February has 29 days in a leap year
+            if (month == 2 && ((year % 400 == 0) || (year % 4 == 0 && year % 100 != 0))) {
+                daysInMonth++; // February has 29 days in a leap year
             }
-
-            // Validate month, day, and year ranges
-            return (month > 0 && month <= 12) && (day > 0 && day <= daysPerMonth[month - 1]) && (year > 0);
+            if (day > daysInMonth) return -1;
+            return year * 10000L + month * 100 + day;
         }
 
         /**
@@ -93,7 +121,7 @@ public class ValidationManager {
                 return false; // If file invalid, return false
             }
 
-            try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
+            try (BufferedReader br = IOAccounting.openReader(new File(filePath))) {
                 String line;
                 while ((line = br.readLine()) != null) { // Read each line
                     String[] parts = line.split(","); //We split file by variables
@@ -128,7 +156,24 @@ public class ValidationManager {
             if (category == null || category.isEmpty()) {
                 return false;
             }
-            return category.matches("[a-zA-Z_&]+"); // Category must be only letters, ampersands, or underscores
+            return scanCategory(category, 0, category.length());
+        }
+
+        /**
+         * Category must be only letters, ampersands, or underscores
+         * @return false if the range is empty or contains any other character
+         */
+        static boolean scanCategory(CharSequence s, int from, int to) {
+            if (from >= to) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                char c = s.charAt(i);
+                if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '&')) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         /**
@@ -137,49 +182,41 @@ public class ValidationManager {
 	 *@return amount trimmed 
         */
         public static boolean validDollarAmount(String amount) {
-            return amount.trim().matches("[+-]?\\d+"); // "[+-]?\\d*(\\.\\d{1,2})?" if you want non integer dollar amounts
+            // [+-]?\d+ once trimmed; use "[+-]?\d*(\.\d{1,2})?" if you want non integer dollar amounts
+            int from = 0;
+            int to = amount.length();
+            while (from < to && amount.charAt(from) <= ' ') from++;
+            while (to > from && amount.charAt(to - 1) <= ' ') to--;
+            if (from < to && (amount.charAt(from) == '+' || amount.charAt(from) == '-')) from++;
+            if (from == to) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                char c = amount.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
         }
 
         /** 
-	   *Validation of one individual line
+	   *Validation of one individual line. Amounts that do not fit in a long, such as
+	   *99999999999999999999, are rejected, as their totals could not be computed.
 	   *@param expectedYear and line
            *@return false if the line isnt vald and if information/categories dont match.
         */
         public static boolean validateLine(int expectedYear, String line) {
-            String[] parts = line.split(",");
-            if (parts.length != 3) {
-                System.err.println("Invalid line format: Wrong number of columns. Please place proper Date, Category, and Amount entries in CSV file.");
-                return false;
-            }
-    
-            String date = parts[0];
-            String category = parts[1];
-            String amount = parts[2];
-    
-            if (!validDateFormat(date)) {
-                System.err.println("Invalid date format: " + date);
-                return false;
-            }
-    
-            int yearInFile = Integer.parseInt(date.split("/")[2]);
-            if (yearInFile != expectedYear) {
-                System.err.println("Year mismatch: found " + yearInFile + ", expected " + expectedYear);
-                return false;
-            }
-    
-            if (!validCategories(category)) {
-                System.err.println("Invalid category: " + category);
+            LineScanner scanner = SCANNERS.get();
+            if (!scanner.scan(line, expectedYear)) {
+                System.err.println(scanner.errorMessage());
                 return false;
             }
-    
-            if (!validDollarAmount(amount)) {
-                System.err.println("Invalid dollar amount: " + amount);
-                return false;
-            }
-
             return true;
         }
 
+        private static final ThreadLocal<LineScanner> SCANNERS = ThreadLocal.withInitial(LineScanner::new);
+
         //Validate header for file, method is dummied out because it is no longer needed.
         /* public static boolean validHeader(String line) {
           String parts = line.split(',');
@@ -203,7 +240,7 @@ public class ValidationManager {
                 return false;
             }
 
-            try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
+            try (BufferedReader br = IOAccounting.openReader(new File(filePath))) {
                 String line;
 		// dummied out header code below:
 		/* = br.readLine();
@@ -222,6 +259,214 @@ public class ValidationManager {
         }
     }
 
+    /**
+     * Reusable, allocation-free validator for one {@code date,category,amount} line.
+     * Applies the same rules as {@link CheckCSVContent#validateLine(int, String)} and keeps
+     * the parsed fields of the last valid line, so callers never need to split the line.
+     * Not thread safe; use one scanner per thread.
+     */
+    public final static class LineScanner {
+        public static final int OK = 0;
+        public static final int BAD_COLUMNS = 1;
+        public static final int BAD_DATE = 2;
+        public static final int BAD_YEAR = 3;
+        public static final int BAD_CATEGORY = 4;
+        public static final int BAD_AMOUNT = 5;
+
+        private final ByteChars bytes = new ByteChars();
+        private CharSequence line;
+        private int expectedYear;
+        private int error;
+        private int month;
+        private int day;
+        private int year;
+        private long amount;
+        private int dateStart, dateEnd;
+        private int categoryStart, categoryEnd;
+        private int amountStart, amountEnd;
+
+        /**
+         * Validates a whole line.
+         * @param line the line, without its terminator
+         * @param expectedYear the year the date must belong to, or 0 to accept any year
+         * @return true if the line is valid
+         */
+        public boolean scan(CharSequence line, int expectedYear) {
+            return scan(line, 0, line.length(), expectedYear);
+        }
+
+        /**
+         * Validates a line stored as ASCII/UTF-8 bytes, without decoding it.
+         * @param buf the buffer holding the line
+         * @param from index of the first byte of the line
+         * @param to index just past the last byte of the line
+         * @param expectedYear the year the date must belong to, or 0 to accept any year
+         * @return true if the line is valid
+         */
+        public boolean scan(byte[] buf, int from, int to, int expectedYear) {
+            bytes.wrap(buf);
+            return scan(bytes, from, to, expectedYear);
+        }
+
+        /**
+         * Validates the characters {@code [from, to)} of {@code line}.
+         * @param expectedYear the year the date must belong to, or 0 to accept any year
+         * @return true if the line is valid
+         */
+        public boolean scan(CharSequence line, int from, int to, int expectedYear) {
+            this.line = line;
+            this.expectedYear = expectedYear;
+
+            // Three columns; trailing empty columns are ignored like String.split does
+            dateStart = from;
+            dateEnd = indexOfComma(line, from, to);
+            categoryStart = dateEnd + 1;
+            categoryEnd = dateEnd < to ? indexOfComma(line, categoryStart, to) : to;
+            amountStart = categoryEnd + 1;
+            amountEnd = categoryEnd < to ? indexOfComma(line, amountStart, to) : to;
+            if (categoryEnd >= to) {
+                return fail(BAD_COLUMNS);
+            }
+            for (int i = amountEnd; i < to; i++) {
+                if (line.charAt(i) != ',') return fail(BAD_COLUMNS);
+            }
+
+            long date = CheckCSVContent.scanDate(line, dateStart, dateEnd);
+            if (date < 0) {
+                return fail(BAD_DATE);
+            }
+            year = (int) (date / 10000);
+            month = (int) (date / 100 % 100);
+            day = (int) (date % 100);
+            if (expectedYear != 0 && year != expectedYear) {
+                return fail(BAD_YEAR);
+            }
+
+            if (!CheckCSVContent.scanCategory(line, categoryStart, categoryEnd)) {
+                return fail(BAD_CATEGORY);
+            }
+
+            if (!scanAmount(line, amountStart, amountEnd)) {
+                return fail(BAD_AMOUNT);
+            }
+
+            error = OK;
+            return true;
+        }
+
+        /** @return the reason the last line was rejected, or {@link #OK}. */
+        public int getError() { return error; }
+        /** @return the month (1-12) of the last valid line. */
+        public int getMonth() { return month; }
+        /** @return the day of the month of the last valid line. */
+        public int getDay() { return day; }
+        /** @return the year of the last valid line. */
+        public int getYear() { return year; }
+        /** @return the amount in dollars of the last valid line. */
+        public long getAmount() { return amount; }
+        /** @return the characters of the last line scanned. */
+        public CharSequence getLine() { return line; }
+        /** @return index of the first character of the category of the last line. */
+        public int getCategoryStart() { return categoryStart; }
+        /** @return index just past the category of the last line. */
+        public int getCategoryEnd() { return categoryEnd; }
+
+        /**
+         * Builds the message {@code validateLine} prints for the last rejected line.
+         * Only meant for the error path, as it allocates.
+         * @return the error message, or null if the last line was valid
+         */
+        public String errorMessage() {
+            switch (error) {
+                case BAD_COLUMNS:
+                    return "Invalid line format: Wrong number of columns. Please place proper Date, Category, and Amount entries in CSV file.";
+                case BAD_DATE:
+                    return "Invalid date format: " + line.subSequence(dateStart, dateEnd);
+                case BAD_YEAR:
+                    return "Year mismatch: found " + year + ", expected " + expectedYear;
+                case BAD_CATEGORY:
+                    return "Invalid category: " + line.subSequence(categoryStart, categoryEnd);
+                case BAD_AMOUNT:
+                    return "Invalid dollar amount: " + line.subSequence(amountStart, amountEnd);
+                default:
+                    return null;
+            }
+        }
+
+        private boolean fail(int reason) {
+            error = reason;
+            return false;
+        }
+
+        /**
+         * Same syntax as {@link CheckCSVContent#validDollarAmount(String)}, also parsing the
+         * value. Amounts that do not fit in a long are rejected.
+         */
+        private boolean scanAmount(CharSequence s, int from, int to) {
+            while (from < to && s.charAt(from) <= ' ') from++;
+            while (to > from && s.charAt(to - 1) <= ' ') to--;
+            boolean negative = false;
+            if (from < to && (s.charAt(from) == '+' || s.charAt(from) == '-')) {
+                negative = s.charAt(from) == '-';
+                from++;
+            }
+            if (from == to) {
+                return false;
+            }
+            long value = 0;
+            for (int i = from; i < to; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') return false;
+                if (value > (Long.MAX_VALUE - (c - '0')) / 10) return false;
+                value = value * 10 + (c - '0');
+            }
+            amount = negative ? -value : value;
+            return true;
+        }
+
+        private static int indexOfComma(CharSequence s, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (s.charAt(i) == ',') return i;
+            }
+            return to;
+        }
+    }
+
+    /**
+     * Read-only {@link CharSequence} view over a byte buffer, so text stored as bytes can
+     * be validated without decoding it. Each byte is one char; {@link #subSequence} and
+     * {@link #toString} decode as UTF-8 and are meant for error messages only.
+     */
+    public final static class ByteChars implements CharSequence {
+        private byte[] buf = new byte[0];
+
+        /**
+         * Points this view at a new buffer.
+         * @param buf the buffer to view
+         * @return this view
+         */
+        public ByteChars wrap(byte[] buf) {
+            this.buf = buf;
+            return this;
+        }
+
+        @Override
+        public int length() { return buf.length; }
+
+        @Override
+        public char charAt(int index) { return (char) (buf[index] & 0xff); }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(buf, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, StandardCharsets.UTF_8);
+        }
+    }
+
     /**
 	 * Used to check for unallowed values during login. Gatekeeps credentials so
 	 * only valid credential values are sent to Authentication.
@@ -0,0 +1,263 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Pre-aggregated totals of one year: for every month x category cell, the sum and
+ * count of income and of expenses. Stored next to the year file as
+ * {@code <year>.cube} so reports and predictions can be answered without touching
+ * the transactions.
+ *
+ * <p>Like the {@link ColumnarYearFile} sidecar, a cube is stamped with the length,
+ * modification time and fingerprint of its CSV and ignored once they change. Since a
+ * year is always replaced as a whole, {@link Budget} rebuilds only the cube of the
+ * year it saved, from the rows it has just parsed.</p>
+ */
+public final class YearCube {
+
+    /** File name extension of the cube files. */
+    public static final String EXTENSION = ".cube";
+
+    private static final int MAGIC = 0x50464D51; // "PFMQ"
+    private static final int VERSION = 2;
+
+    private final int year;
+    private final int invalidRows;
+    private final int width; // number of category columns
+    private final CategoryDictionary categories;
+    private final long[] incomeSums;
+    private final long[] expenseSums;
+    private final int[] incomeCounts;
+    private final int[] expenseCounts;
+
+    private YearCube(int year, int invalidRows, int width, CategoryDictionary categories) {
+        this.year = year;
+        this.invalidRows = invalidRows;
+        this.width = width;
+        this.categories = categories;
+        this.incomeSums = new long[12 * width];
+        this.expenseSums = new long[12 * width];
+        this.incomeCounts = new int[12 * width];
+        this.expenseCounts = new int[12 * width];
+    }
+
+    /**
+     * Aggregates the rows of a year.
+     * @param year the year of the rows.
+     * @param columns the valid rows of the year.
+     * @return the cube.
+     */
+    public static YearCube build(int year, ColumnarYearFile columns) {
+        CategoryDictionary categories = columns.getCategories();
+        YearCube cube = new YearCube(year, columns.invalidRows(), categories.size(), categories);
+        for (int i = 0; i < columns.rows(); i++) {
+            cube.add(columns.month(i), columns.categoryId(i), columns.amount(i));
+        }
+        return cube;
+    }
+
+    /**
+     * Aggregates the rows of a year.
+     * @param year the year of the rows.
+     * @param table the valid rows of the year.
+     * @param invalidRows the number of lines of the CSV that were rejected.
+     * @return the cube.
+     */
+    public static YearCube build(int year, TransactionTable table, int invalidRows) {
+        CategoryDictionary categories = table.getCategories();
+        YearCube cube = new YearCube(year, invalidRows, categories.size(), categories);
+        TransactionTable.Cursor row = table.cursor();
+        while (row.next()) {
+            cube.add(row.getMonth(), row.getCategoryId(), row.getAmount());
+        }
+        return cube;
+    }
+
+    private void add(int month, int categoryId, long amount) {
+        int cell = (month - 1) * width + categoryId;
+        if (amount < 0) {
+            expenseSums[cell] -= amount;
+            expenseCounts[cell]++;
+        } else {
+            incomeSums[cell] += amount;
+            incomeCounts[cell]++;
+        }
+    }
+
+    /**
+     * Returns the cube file that belongs to a CSV file.
+     * @param csv the year CSV file.
+     * @return the cube file, which may not exist.
+     */
+    public static File cubeFor(File csv) {
+        String name = csv.getName();
+        if (name.toLowerCase().endsWith(".csv")) name = name.substring(0, name.length() - 4);
+        return new File(csv.getParentFile(), name + EXTENSION);
+    }
+
+    /**
+     * Reads the cube of a CSV file.
+     * @param csv the year CSV file.
+     * @return the cube, or null if there is no up-to-date cube.
+     */
+    public static YearCube open(File csv) {
+        File file = cubeFor(csv);
+        if (!IOAccounting.isFile(file)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(IOAccounting.openInput(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (in.readLong() != IOAccounting.length(csv) || in.readLong() != IOAccounting.lastModified(csv)
+                    || in.readLong() != ColumnarYearFile.fingerprint(csv)) {
+                return null;
+            }
+
+            int year = in.readInt();
+            int invalidRows = in.readInt();
+            int width = in.readInt();
+            CategoryDictionary categories = CategoryDictionary.forDirectory(csv.getAbsoluteFile().getParentFile());
+            if (width < 0 || width > categories.size()) return null;
+
+            YearCube cube = new YearCube(year, invalidRows, width, categories);
+            for (int cell = 0; cell < 12 * width; cell++) {
+                cube.incomeSums[cell] = in.readLong();
+                cube.expenseSums[cell] = in.readLong();
+                cube.incomeCounts[cell] = in.readInt();
+                cube.expenseCounts[cell] = in.readInt();
+            }
+            return cube;
+        } catch (IOException e) {
+            // A truncated or corrupt cube is rebuilt
+            return null;
+        }
+    }
+
+    /**
+     * Reads the cube of a CSV file, first rebuilding it from the year's columns if it
+     * is missing or stale.
+     * @param csv the year CSV file.
+     * @param year the year every row must belong to.
+     * @return the cube of the year.
+     * @throws IOException if the CSV cannot be read.
+     */
+    public static YearCube openOrBuild(File csv, int year) throws IOException {
+        YearCube cube = open(csv);
+        if (cube != null) return cube;
+
+        cube = build(year, ColumnarYearFile.openOrBuild(csv, year));
+        try {
+            cube.write(csv);
+        } catch (IOException e) {
+            System.err.println("Could not save report cube of " + csv.getName() + ": " + e.getMessage());
+        }
+        return cube;
+    }
+
+    /**
+     * Writes this cube next to a CSV file, stamped with the CSV's current length,
+     * modification time and fingerprint. The cube is replaced through a temporary
+     * file, so a concurrent reader never sees it partly written.
+     * @param csv the CSV file the cube was built from.
+     * @throws IOException if the cube cannot be written.
+     */
+    public void write(File csv) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(44 + 12 * width * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(IOAccounting.length(csv));
+            out.writeLong(IOAccounting.lastModified(csv));
+            out.writeLong(ColumnarYearFile.fingerprint(csv));
+            out.writeInt(year);
+            out.writeInt(invalidRows);
+            out.writeInt(width);
+            for (int cell = 0; cell < 12 * width; cell++) {
+                out.writeLong(incomeSums[cell]);
+                out.writeLong(expenseSums[cell]);
+                out.writeInt(incomeCounts[cell]);
+                out.writeInt(expenseCounts[cell]);
+            }
+        }
+        AtomicFiles.write(cubeFor(csv).toPath(), ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /** @return the year the cube describes. */
+    public int getYear() { return year; }
+    /** @return the number of lines of the CSV that were rejected. */
+    public int invalidRows() { return invalidRows; }
+    /** @return true if every line of the CSV was valid. */
+    public boolean isValid() { return invalidRows == 0; }
+    /** @return the dictionary the category ids refer to. */
+    public CategoryDictionary getCategories() { return categories; }
+    /** @return the number of category ids the cube has columns for. */
+    public int categoryCount() { return width; }
+
+    /** @return the income of one cell; month is 1-12. */
+    public long income(int month, int categoryId) { return categoryId < width ? incomeSums[(month - 1) * width + categoryId] : 0; }
+    /** @return the expenses (as a positive amount) of one cell; month is 1-12. */
+    public long expenses(int month, int categoryId) { return categoryId < width ? expenseSums[(month - 1) * width + categoryId] : 0; }
+    /** @return the number of income rows of one cell; month is 1-12. */
+    public int incomeCount(int month, int categoryId) { return categoryId < width ? incomeCounts[(month - 1) * width + categoryId] : 0; }
+    /** @return the number of expense rows of one cell; month is 1-12. */
+    public int expenseCount(int month, int categoryId) { return categoryId < width ? expenseCounts[(month - 1) * width + categoryId] : 0; }
+
+    /** @return the income of a month (1-12) over all categories. */
+    public long monthIncome(int month) {
+        long sum = 0;
+        for (int c = 0; c < width; c++) sum += incomeSums[(month - 1) * width + c];
+        return sum;
+    }
+
+    /** @return the expenses of a month (1-12) over all categories. */
+    public long monthExpenses(int month) {
+        long sum = 0;
+        for (int c = 0; c < width; c++) sum += expenseSums[(month - 1) * width + c];
+        return sum;
+    }
+
+    /** @return the income of a category over the year. */
+    public long categoryIncome(int categoryId) {
+        long sum = 0;
+        for (int m = 1; m <= 12; m++) sum += income(m, categoryId);
+        return sum;
+    }
+
+    /** @return the expenses of a category over the year. */
+    public long categoryExpenses(int categoryId) {
+        long sum = 0;
+        for (int m = 1; m <= 12; m++) sum += expenses(m, categoryId);
+        return sum;
+    }
+
+    /** @return true if the category has at least one row in the year. */
+    public boolean hasCategory(int categoryId) {
+        for (int m = 1; m <= 12; m++) {
+            if (incomeCount(m, categoryId) > 0 || expenseCount(m, categoryId) > 0) return true;
+        }
+        return false;
+    }
+
+    /** @return the number of rows aggregated in the cube. */
+    public int rows() {
+        int sum = 0;
+        for (int cell = 0; cell < 12 * width; cell++) sum += incomeCounts[cell] + expenseCounts[cell];
+        return sum;
+    }
+
+    /** @return the income of the whole year. */
+    public long totalIncome() {
+        long sum = 0;
+        for (long value : incomeSums) sum += value;
+        return sum;
+    }
+
+    /** @return the expenses of the whole year. */
+    public long totalExpenses() {
+        long sum = 0;
+        for (long value : expenseSums) sum += value;
+        return sum;
+    }
+}
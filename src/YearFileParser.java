@@ -0,0 +1,420 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Single-pass reader for the {@code <year>.csv} files kept under {@code pfm_data}.
+ * The file is read once as raw bytes; every line is validated in place with a
+ * {@link ValidationManager.LineScanner} (the same rules as
+ * {@link ValidationManager.CheckCSVContent#validateLine(int, String)}) and, when valid,
+ * handed to a {@link RowHandler} already broken into its parsed fields.
+ * Invalid lines are reported on {@code System.err} together with their line number.
+ *
+ * <p>Large files can be parsed in parallel: the file is split into byte ranges that
+ * start and end on line boundaries, each range is validated and parsed on its own
+ * thread, and the results are then handed to the handler and reported in file order,
+ * with the same line numbers and category ids as a sequential pass.</p>
+ *
+ * <p>Instances of this class are not allowed.</p>
+ */
+public final class YearFileParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Files smaller than two chunks of this size are parsed sequentially. */
+    private static final long MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Receives every valid row of a year file, in file order.
+     */
+    public interface RowHandler {
+        /**
+         * Called once per valid row.
+         * @param lineNumber the 1-based line number of the row in the file.
+         * @param month the month (1-12).
+         * @param day the day of the month (1-31).
+         * @param year the year.
+         * @param categoryId the id of the category in the {@link CategoryDictionary} passed to parse.
+         * @param amount the amount in dollars (negative for expenses).
+         */
+        void row(int lineNumber, int month, int day, int year, int categoryId, long amount);
+    }
+
+    /**
+     * Summary of one pass over a year file.
+     */
+    public static final class Result {
+        private int validRows;
+        private int invalidRows;
+
+        /** @return the number of rows handed to the {@link RowHandler}. */
+        public int getValidRows() { return validRows; }
+        /** @return the number of rows that failed validation. */
+        public int getInvalidRows() { return invalidRows; }
+        /** @return true if every non-blank line of the file was valid. */
+        public boolean isValid() { return invalidRows == 0; }
+    }
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private YearFileParser() {}
+
+    /**
+     * @return the parallelism for large files: the {@code pfm.ingest.parallelism} system
+     *         property, or the number of cores.
+     */
+    public static int defaultParallelism() {
+        return Integer.getInteger("pfm.ingest.parallelism", Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Validates and parses a year file in one pass.
+     * @param filePath the CSV file to read.
+     * @param expectedYear the year every row must belong to, or 0 to accept any year.
+     * @param categories dictionary the categories are interned into; may be null if handler is.
+     * @param handler receives the valid rows; may be null to only validate.
+     * @return the validation summary.
+     * @throws IOException if the file cannot be read or a new category cannot be saved.
+     */
+    public static Result parse(String filePath, int expectedYear, CategoryDictionary categories,
+                               RowHandler handler) throws IOException {
+        return parse(filePath, expectedYear, false, categories, handler);
+    }
+
+    /**
+     * Validates and parses a year file in one pass.
+     * @param filePath the CSV file to read.
+     * @param expectedYear the year every row must belong to, or 0 to accept any year.
+     * @param skipHeader true to ignore a {@code date,category,amount} header on the first line.
+     * @param categories dictionary the categories are interned into; may be null if handler is.
+     * @param handler receives the valid rows; may be null to only validate.
+     * @return the validation summary.
+     * @throws IOException if the file cannot be read or a new category cannot be saved.
+     */
+    public static Result parse(String filePath, int expectedYear, boolean skipHeader,
+                               CategoryDictionary categories, RowHandler handler) throws IOException {
+        Pass pass = new Pass(expectedYear, skipHeader, categories, handler);
+        try (FileChannel channel = IOAccounting.openChannel(Paths.get(filePath), StandardOpenOption.READ)) {
+            scan(channel, 0, Long.MAX_VALUE, pass);
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // a new category could not be saved
+        }
+        return pass.result;
+    }
+
+    /**
+     * Validates and parses a year file, splitting it into line-aligned chunks that are
+     * processed in parallel. The handler is called on the calling thread, in file
+     * order, once every chunk is done; small files are parsed sequentially.
+     * @param filePath the CSV file to read.
+     * @param expectedYear the year every row must belong to, or 0 to accept any year.
+     * @param skipHeader true to ignore a {@code date,category,amount} header on the first line.
+     * @param categories dictionary the categories are interned into; may be null if handler is.
+     * @param handler receives the valid rows; may be null to only validate.
+     * @param parallelism the maximum number of chunks parsed at once.
+     * @return the validation summary.
+     * @throws IOException if the file cannot be read or a new category cannot be saved.
+     */
+    public static Result parse(String filePath, int expectedYear, boolean skipHeader,
+                               CategoryDictionary categories, RowHandler handler, int parallelism) throws IOException {
+        try (FileChannel channel = IOAccounting.openChannel(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (parallelism <= 1 || size < 2 * MIN_CHUNK_SIZE) {
+                Pass pass = new Pass(expectedYear, skipHeader, categories, handler);
+                scan(channel, 0, Long.MAX_VALUE, pass);
+                return pass.result;
+            }
+
+            // Several chunks per thread even out lines of uneven cost
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / (parallelism * 4L)));
+            List<Long> bounds = new ArrayList<>();
+            bounds.add(0L);
+            for (long at = chunkSize; at < size; ) {
+                long boundary = nextLineStart(channel, at, size);
+                if (boundary >= size) break;
+                bounds.add(boundary);
+                at = boundary + chunkSize;
+            }
+            bounds.add(size);
+
+            List<Chunk> chunks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.size(); i++) {
+                chunks.add(new Chunk(expectedYear, skipHeader && i == 0, categories, handler != null));
+            }
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<Future<?>> futures = new ArrayList<>(chunks.size());
+                for (int i = 0; i < chunks.size(); i++) {
+                    Chunk chunk = chunks.get(i);
+                    long from = bounds.get(i);
+                    long to = bounds.get(i + 1);
+                    futures.add(pool.submit(IOAccounting.propagate(() -> {
+                        scan(channel, from, to, chunk);
+                        return null;
+                    })));
+                }
+                for (Future<?> future : futures) future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while parsing " + filePath, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new IOException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+
+            // Merge in file order: line numbers continue from the previous chunk, and new
+            // categories are interned in order of first appearance
+            Result result = new Result();
+            int lineOffset = 0;
+            for (Chunk chunk : chunks) {
+                chunk.merge(lineOffset, handler);
+                result.validRows += chunk.result.validRows;
+                result.invalidRows += chunk.result.invalidRows;
+                lineOffset += chunk.lines;
+            }
+            return result;
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // a new category could not be saved
+        }
+    }
+
+    /**
+     * Returns the position just past the first line terminator at or after {@code at}.
+     */
+    private static long nextLineStart(FileChannel channel, long at, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        long pos = at;
+        while (pos < size) {
+            buf.clear();
+            int n = IOAccounting.read(channel, buf, pos);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                byte b = buf.get(i);
+                if (b == '\n') return pos + i + 1;
+                if (b == '\r') {
+                    // A \r\n terminator must not be split between chunks
+                    if (i + 1 < n) return buf.get(i + 1) == '\n' ? pos + i + 2 : pos + i + 1;
+                    ByteBuffer next = ByteBuffer.allocate(1);
+                    boolean crlf = IOAccounting.read(channel, next, pos + i + 1) == 1 && next.get(0) == '\n';
+                    return pos + i + (crlf ? 2 : 1);
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    /**
+     * Feeds the lines of the bytes {@code [start, end)} of a file to a pass. The range
+     * must start at the beginning of a line.
+     */
+    private static void scan(FileChannel channel, long start, long end, Pass pass) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        ByteBuffer wrapper = ByteBuffer.wrap(buf);
+        long position = start;
+        int len = 0;        // bytes held in buf
+        int lineStart = 0;  // start of the line being scanned
+        int pos = 0;        // next byte to look at
+        boolean afterCR = false;
+
+        while (true) {
+            if (pos == len) {
+                // Keep the partial line and refill the buffer behind it
+                if (lineStart > 0) {
+                    System.arraycopy(buf, lineStart, buf, 0, len - lineStart);
+                    len -= lineStart;
+                    pos -= lineStart;
+                    lineStart = 0;
+                }
+                if (len == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                    wrapper = ByteBuffer.wrap(buf);
+                }
+                int n = -1;
+                if (position < end) {
+                    wrapper.limit(len + (int) Math.min(buf.length - len, end - position));
+                    wrapper.position(len);
+                    n = IOAccounting.read(channel, wrapper, position);
+                }
+                if (n < 0) {
+                    if (lineStart < len) pass.line(buf, lineStart, len, ++pass.lines);
+                    break;
+                }
+                position += n;
+                len += n;
+                continue;
+            }
+
+            byte b = buf[pos++];
+            if (b == '\n' && afterCR) {
+                // second half of a \r\n terminator
+                afterCR = false;
+                lineStart = pos;
+            } else if (b == '\n' || b == '\r') {
+                pass.line(buf, lineStart, pos - 1, ++pass.lines);
+                afterCR = b == '\r';
+                lineStart = pos;
+            } else {
+                afterCR = false;
+            }
+        }
+    }
+
+    /**
+     * State of one pass over a file.
+     */
+    private static class Pass {
+        final ValidationManager.LineScanner scanner = new ValidationManager.LineScanner();
+        final Result result = new Result();
+        final int expectedYear;
+        final boolean skipHeader;
+        final CategoryDictionary categories;
+        final RowHandler handler;
+        int lines;
+
+        Pass(int expectedYear, boolean skipHeader, CategoryDictionary categories, RowHandler handler) {
+            this.expectedYear = expectedYear;
+            this.skipHeader = skipHeader;
+            this.categories = categories;
+            this.handler = handler;
+        }
+
+        /**
+         * Validates the bytes {@code [from, to)} of {@code buf} as one line and forwards
+         * them to the handler if valid.
+         */
+        void line(byte[] buf, int from, int to, int lineNumber) {
+            while (from < to && (buf[from] & 0xff) <= ' ') from++;
+            while (to > from && (buf[to - 1] & 0xff) <= ' ') to--;
+            if (from == to) return;
+
+            if (skipHeader && lineNumber == 1) {
+                String header = new String(buf, from, to - from, StandardCharsets.UTF_8);
+                if (header.toLowerCase().contains("date") && header.contains("category")) return;
+            }
+
+            if (!scanner.scan(buf, from, to, expectedYear)) {
+                invalid(lineNumber, scanner.errorMessage());
+                result.invalidRows++;
+                return;
+            }
+
+            result.validRows++;
+            if (handler != null) {
+                int categoryId = categories.intern(scanner.getLine(), scanner.getCategoryStart(),
+                        scanner.getCategoryEnd());
+                handler.row(lineNumber, scanner.getMonth(), scanner.getDay(), scanner.getYear(), categoryId,
+                        scanner.getAmount());
+            }
+        }
+
+        void invalid(int lineNumber, String message) {
+            System.err.println("Line " + lineNumber + ": " + message);
+        }
+    }
+
+    /**
+     * Pass over one chunk of a file, run on a worker thread. Rows, errors and categories
+     * not yet in the dictionary are kept, with chunk-relative line numbers, until the
+     * chunk is merged.
+     */
+    private static final class Chunk extends Pass implements RowHandler {
+        private int size;
+        private int[] lineNumbers = new int[0];
+        private long[] dates = new long[0]; // long: any positive year is valid here
+        private int[] categoryIds = new int[0];
+        private long[] amounts = new long[0];
+        private final List<String> newCategories = new ArrayList<>();
+        private final List<Integer> errorLines = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private final boolean keepRows;
+
+        Chunk(int expectedYear, boolean skipHeader, CategoryDictionary categories, boolean keepRows) {
+            super(expectedYear, skipHeader, categories, null);
+            this.keepRows = keepRows;
+        }
+
+        @Override
+        void line(byte[] buf, int from, int to, int lineNumber) {
+            int before = result.validRows;
+            super.line(buf, from, to, lineNumber);
+            if (keepRows && result.validRows > before) {
+                // Known categories keep their id; new ones get -(index + 1) until merged
+                int id = categories.lookup(scanner.getLine(), scanner.getCategoryStart(), scanner.getCategoryEnd());
+                if (id < 0) {
+                    String name = scanner.getLine().subSequence(scanner.getCategoryStart(),
+                            scanner.getCategoryEnd()).toString();
+                    int index = newCategories.indexOf(name);
+                    if (index < 0) {
+                        index = newCategories.size();
+                        newCategories.add(name);
+                    }
+                    id = -(index + 1);
+                }
+                row(lineNumber, scanner.getMonth(), scanner.getDay(), scanner.getYear(), id, scanner.getAmount());
+            }
+        }
+
+        @Override
+        public void row(int lineNumber, int month, int day, int year, int categoryId, long amount) {
+            if (size == dates.length) {
+                int capacity = Math.max(1024, size * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+                dates = Arrays.copyOf(dates, capacity);
+                categoryIds = Arrays.copyOf(categoryIds, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+            }
+            lineNumbers[size] = lineNumber;
+            dates[size] = year * 10000L + month * 100 + day;
+            categoryIds[size] = categoryId;
+            amounts[size] = amount;
+            size++;
+        }
+
+        @Override
+        void invalid(int lineNumber, String message) {
+            errorLines.add(lineNumber);
+            errors.add(message);
+        }
+
+        /**
+         * Reports the chunk's errors and hands its rows to the handler.
+         * @param lineOffset the number of lines before the chunk.
+         */
+        void merge(int lineOffset, RowHandler handler) {
+            for (int i = 0; i < errors.size(); i++) {
+                System.err.println("Line " + (lineOffset + errorLines.get(i)) + ": " + errors.get(i));
+            }
+            if (handler == null) return;
+
+            int[] remap = new int[newCategories.size()];
+            for (int i = 0; i < remap.length; i++) remap[i] = -1;
+            for (int r = 0; r < size; r++) {
+                int id = categoryIds[r];
+                if (id < 0) {
+                    int index = -id - 1;
+                    if (remap[index] < 0) remap[index] = categories.intern(newCategories.get(index));
+                    id = remap[index];
+                }
+                long date = dates[r];
+                handler.row(lineOffset + lineNumbers[r], (int) (date / 100 % 100), (int) (date % 100),
+                        (int) (date / 10000), id, amounts[r]);
+            }
+        }
+    }
+}